@@ -0,0 +1,150 @@
+/*
+ * CopyEvents.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits events of copy operations to the Java Flight Recorder. The Flight
+ * Recorder is only available since Java 11, so the events are emitted by a
+ * subclass that is loaded when the Flight Recorder API is present. This
+ * class itself does nothing. Every event is started with a begin method that
+ * returns the event (or <tt>null</tt>, if the event is disabled) and is
+ * committed with the matching end method.
+ */
+class CopyEvents {
+
+    private final static Logger LOGGER =
+            Logger.getLogger(CopyEvents.class.getName());
+    private static final CopyEvents INSTANCE = createInstance();
+
+    /**
+     * returns the events of the running Java VM
+     *
+     * @return the events of the running Java VM
+     */
+    public static CopyEvents getInstance() {
+        return INSTANCE;
+    }
+
+    private static CopyEvents createInstance() {
+        try {
+            Class.forName("jdk.jfr.Event");
+        } catch (ClassNotFoundException ex) {
+            LOGGER.fine("the Java Flight Recorder is not available");
+            return new CopyEvents();
+        }
+        try {
+            return (CopyEvents) Class.forName(
+                    "ch.fhnw.filecopier.FlightRecorderEvents").newInstance();
+        } catch (ClassNotFoundException ex) {
+            // built with the profile "without-jfr"
+            LOGGER.fine("the library was built without Java Flight Recorder "
+                    + "events");
+            return new CopyEvents();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            LOGGER.log(Level.WARNING,
+                    "could not load Java Flight Recorder events", ex);
+            return new CopyEvents();
+        }
+    }
+
+    /**
+     * starts a scan directory event
+     *
+     * @return the event or <tt>null</tt>, if the event is disabled
+     */
+    public Object beginScanDirectory() {
+        return null;
+    }
+
+    /**
+     * commits a scan directory event
+     *
+     * @param event the event returned by {@link #beginScanDirectory()}
+     * @param directory the scanned directory
+     * @param fileCount the number of matching files and directories
+     * (including the ones in subdirectories)
+     * @param byteCount the size of all matching files
+     */
+    public void endScanDirectory(Object event, File directory, int fileCount,
+            long byteCount) {
+    }
+
+    /**
+     * starts a file copy event
+     *
+     * @return the event or <tt>null</tt>, if the event is disabled
+     */
+    public Object beginFileCopy() {
+        return null;
+    }
+
+    /**
+     * commits a file copy event
+     *
+     * @param event the event returned by {@link #beginFileCopy()}
+     * @param source the copied file
+     * @param size the size of the file
+     * @param destinationCount the number of destinations
+     */
+    public void endFileCopy(Object event, File source, long size,
+            int destinationCount) {
+    }
+
+    /**
+     * starts a slice event
+     *
+     * @return the event or <tt>null</tt>, if the event is disabled
+     */
+    public Object beginSlice() {
+        return null;
+    }
+
+    /**
+     * commits a slice event
+     *
+     * @param event the event returned by {@link #beginSlice()}
+     * @param transferVolume the data volume of the slice
+     * @param newSlice the size of the next slice
+     */
+    public void endSlice(Object event, long transferVolume, long newSlice) {
+    }
+
+    /**
+     * starts a barrier wait event
+     *
+     * @return the event or <tt>null</tt>, if the event is disabled
+     */
+    public Object beginBarrierWait() {
+        return null;
+    }
+
+    /**
+     * commits a barrier wait event
+     *
+     * @param event the event returned by {@link #beginBarrierWait()}
+     * @param destination the destination whose transferrer waited
+     */
+    public void endBarrierWait(Object event, File destination) {
+    }
+}
@@ -21,7 +21,10 @@
 
 package ch.fhnw.filecopier;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A class that contains information about files to copy
@@ -29,10 +32,164 @@ import java.util.List;
  */
 public class CopyJob {
 
+    /**
+     * the verification of the destinations after copying
+     */
+    public enum Verification {
+
+        /**
+         * the destinations are not verified
+         */
+        NONE,
+        /**
+         * every destination is read back completely and compared with a
+         * digest of the source that was computed while copying
+         */
+        FULL,
+        /**
+         * randomly chosen blocks of every destination are compared with the
+         * source, small files are compared completely
+         */
+        SAMPLED
+    }
+
+    /**
+     * the handling of destination files that already exist
+     */
+    public enum OverwritePolicy {
+
+        /**
+         * existing destination files are always overwritten
+         */
+        ALWAYS,
+        /**
+         * existing destination files are skipped when they have the same
+         * size and modification time as the source file (the modification
+         * time of the source is copied to all destinations)
+         */
+        SKIP_SAME_SIZE_AND_MTIME,
+        /**
+         * existing destination files are skipped when they have the same size
+         * and the same checksum as the source file
+         */
+        SKIP_SAME_CHECKSUM,
+        /**
+         * existing destination files are never overwritten
+         */
+        NEVER
+    }
+
+    /**
+     * the policy for forcing destination files to the storage device
+     */
+    public enum SyncPolicy {
+
+        /**
+         * destination files are not explicitly forced to the storage device
+         */
+        NONE,
+        /**
+         * every destination file is forced to the storage device when it is
+         * complete
+         */
+        PER_FILE,
+        /**
+         * destination files are forced to the storage device in groups of a
+         * configurable number of files or bytes
+         */
+        GROUP_COMMIT,
+        /**
+         * all destination files are forced to the storage device at the end
+         * of the copy job
+         */
+        END_OF_JOB
+    }
+
+    /**
+     * the handling of several destinations on the same file system
+     */
+    public enum LinkMode {
+
+        /**
+         * every destination is written separately
+         */
+        NONE,
+        /**
+         * only the first destination on every file system is written, all
+         * other destinations on the same file system are hard links to it
+         * (falls back to copying when hard links are not supported)
+         */
+        HARD_LINK
+    }
+
+    /**
+     * the comparison of source files with their counterparts in the reference
+     * directories
+     */
+    public enum ReferenceComparison {
+
+        /**
+         * files with the same size and modification time are considered
+         * unchanged
+         */
+        SIZE_AND_MTIME,
+        /**
+         * files with the same size and checksum are considered unchanged
+         */
+        CHECKSUM
+    }
+
+    /**
+     * the format of the archive created by archive copy jobs (see
+     * {@link CopyJob#isArchive()})
+     */
+    public enum ArchiveFormat {
+
+        /**
+         * a zip archive
+         */
+        ZIP,
+        /**
+         * an uncompressed tar archive (POSIX ustar format with pax extended
+         * headers for long names and large files)
+         */
+        TAR,
+        /**
+         * a tar archive compressed with gzip
+         */
+        TAR_GZ
+    }
     private final Source[] sources;
     private final String[] destinations;
     private List<DirectoryInfo> directoryInfos;
     private boolean zip;
+    private Verification verification = Verification.NONE;
+    private int sampleCount = 64;
+    private int sampleSize = 65536; // 64 KiB
+    private OverwritePolicy overwritePolicy = OverwritePolicy.ALWAYS;
+    private boolean deltaUpdate;
+    private int deltaBlockSize = 1048576; // 1 MiB
+    private File journal;
+    private boolean atomic;
+    private SyncPolicy syncPolicy = SyncPolicy.NONE;
+    private int groupCommitFiles = 256;
+    private long groupCommitBytes = 268435456; // 256 MiB
+    private LinkMode linkMode = LinkMode.NONE;
+    private String[] referenceDirectories = new String[0];
+    private ReferenceComparison referenceComparison =
+            ReferenceComparison.SIZE_AND_MTIME;
+    private boolean deduplicate;
+    private int compressionLevel = -1; // Deflater.DEFAULT_COMPRESSION
+    private String[] storedExtensions = {
+        "7z", "avi", "bz2", "docx", "flac", "gif", "gz", "jar", "jpeg", "jpg",
+        "mkv", "mov", "mp3", "mp4", "odt", "ogg", "png", "rar", "tgz", "webm",
+        "webp", "xlsx", "xz", "zip"
+    };
+    private boolean zipUpdate;
+    private ArchiveFormat archiveFormat = ArchiveFormat.ZIP;
+    private Map<File, File> duplicates = Collections.emptyMap();
+    private Map<File, List<ZipArchiveEntry>> zipEntries =
+            Collections.emptyMap();
 
     /**
      * A class representing a copy job.
@@ -87,7 +244,444 @@ public class CopyJob {
         return directoryInfos;
     }
 
-    public boolean isZip() {
+    /**
+     * returns <tt>true</tt>, if this copy job creates an archive (see
+     * {@link #getArchiveFormat()} for its format)
+     * @return <tt>true</tt>, if this copy job creates an archive
+     */
+    public boolean isArchive() {
         return zip;
     }
+
+    /**
+     * returns <tt>true</tt>, if this copy job creates a zip archive
+     * @return <tt>true</tt>, if this copy job creates a zip archive
+     */
+    public boolean isZip() {
+        return zip && (archiveFormat == ArchiveFormat.ZIP);
+    }
+
+    /**
+     * sets the verification of the destinations after copying<br>
+     * The destinations are read back through the operating system, so
+     * recently written data may come from its page cache instead of the
+     * storage device. Verification therefore detects errors in the copy
+     * itself (e.g. a corrupted transfer or a modified destination), but not
+     * write errors of the storage device.
+     * @param verification the verification of the destinations after copying
+     */
+    public void setVerification(Verification verification) {
+        this.verification = verification;
+    }
+
+    /**
+     * returns the verification of the destinations after copying
+     * @return the verification of the destinations after copying
+     */
+    public Verification getVerification() {
+        return verification;
+    }
+
+    /**
+     * sets the number of blocks compared per file when using sampled
+     * verification
+     * @param sampleCount the number of blocks compared per file
+     */
+    public void setSampleCount(int sampleCount) {
+        if (sampleCount < 1) {
+            throw new IllegalArgumentException(
+                    "sampleCount must be positive");
+        }
+        this.sampleCount = sampleCount;
+    }
+
+    /**
+     * returns the number of blocks compared per file when using sampled
+     * verification
+     * @return the number of blocks compared per file
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * sets the size of the blocks compared when using sampled verification
+     * @param sampleSize the size of the compared blocks in byte
+     */
+    public void setSampleSize(int sampleSize) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be positive");
+        }
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * returns the size of the blocks compared when using sampled verification
+     * @return the size of the compared blocks in byte
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * sets the handling of destination files that already exist
+     * @param overwritePolicy the handling of destination files that already
+     * exist
+     */
+    public void setOverwritePolicy(OverwritePolicy overwritePolicy) {
+        this.overwritePolicy = overwritePolicy;
+    }
+
+    /**
+     * returns the handling of destination files that already exist
+     * @return the handling of destination files that already exist
+     */
+    public OverwritePolicy getOverwritePolicy() {
+        return overwritePolicy;
+    }
+
+    /**
+     * Sets the delta update mode. In delta update mode existing destination
+     * files are compared block by block with the source and only the blocks
+     * that differ are written.
+     * @param deltaUpdate if <tt>true</tt>, existing destination files are
+     * updated block by block, if <tt>false</tt> they are completely rewritten
+     */
+    public void setDeltaUpdate(boolean deltaUpdate) {
+        this.deltaUpdate = deltaUpdate;
+    }
+
+    /**
+     * returns <tt>true</tt> if existing destination files are updated block
+     * by block, <tt>false</tt> otherwise
+     * @return <tt>true</tt> if existing destination files are updated block
+     * by block, <tt>false</tt> otherwise
+     */
+    public boolean isDeltaUpdate() {
+        return deltaUpdate;
+    }
+
+    /**
+     * sets the size of the blocks compared in delta update mode
+     * @param deltaBlockSize the size of the compared blocks in byte
+     */
+    public void setDeltaBlockSize(int deltaBlockSize) {
+        if (deltaBlockSize < 1) {
+            throw new IllegalArgumentException(
+                    "deltaBlockSize must be positive");
+        }
+        this.deltaBlockSize = deltaBlockSize;
+    }
+
+    /**
+     * returns the size of the blocks compared in delta update mode
+     * @return the size of the compared blocks in byte
+     */
+    public int getDeltaBlockSize() {
+        return deltaBlockSize;
+    }
+
+    /**
+     * Sets the journal file of this copy job. The journal records the
+     * progress of the copy job so that a later copy of the same copy job can
+     * resume where an interrupted copy stopped. Every completed destination
+     * file is durably stored before it is recorded in the journal. The
+     * journal is removed when the copy job completes. Journals are not used
+     * for zip files.
+     * @param journal the journal file or <tt>null</tt>, if no journal should
+     * be written
+     */
+    public void setJournal(File journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * returns the journal file of this copy job
+     * @return the journal file of this copy job or <tt>null</tt>, if no
+     * journal is written
+     */
+    public File getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the atomic mode. In atomic mode every destination file is written
+     * to a temporary file in the same directory that is renamed to the final
+     * name when it is complete (and, depending on the sync policy, forced to
+     * the storage device). Readers therefore never see half-written files.
+     * Delta updates are not used in atomic mode.
+     * @param atomic if <tt>true</tt>, destination files are replaced
+     * atomically
+     */
+    public void setAtomic(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    /**
+     * returns <tt>true</tt> if destination files are replaced atomically,
+     * <tt>false</tt> otherwise
+     * @return <tt>true</tt> if destination files are replaced atomically,
+     * <tt>false</tt> otherwise
+     */
+    public boolean isAtomic() {
+        return atomic;
+    }
+
+    /**
+     * Sets the policy for forcing destination files to the storage device.
+     * When a journal is used, every destination file is forced when it is
+     * complete, regardless of this policy.
+     * @param syncPolicy the policy for forcing destination files to the
+     * storage device
+     */
+    public void setSyncPolicy(SyncPolicy syncPolicy) {
+        this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * returns the policy for forcing destination files to the storage device
+     * @return the policy for forcing destination files to the storage device
+     */
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * sets the number of destination files after which a group commit is
+     * done
+     * @param groupCommitFiles the number of destination files after which a
+     * group commit is done
+     */
+    public void setGroupCommitFiles(int groupCommitFiles) {
+        this.groupCommitFiles = groupCommitFiles;
+    }
+
+    /**
+     * returns the number of destination files after which a group commit is
+     * done
+     * @return the number of destination files after which a group commit is
+     * done
+     */
+    public int getGroupCommitFiles() {
+        return groupCommitFiles;
+    }
+
+    /**
+     * sets the number of destination bytes after which a group commit is
+     * done
+     * @param groupCommitBytes the number of destination bytes after which a
+     * group commit is done
+     */
+    public void setGroupCommitBytes(long groupCommitBytes) {
+        this.groupCommitBytes = groupCommitBytes;
+    }
+
+    /**
+     * returns the number of destination bytes after which a group commit is
+     * done
+     * @return the number of destination bytes after which a group commit is
+     * done
+     */
+    public long getGroupCommitBytes() {
+        return groupCommitBytes;
+    }
+
+    /**
+     * Sets the handling of several destinations on the same file system.
+     * {@link LinkMode#HARD_LINK} is the only mode that reduces the written
+     * data volume, there is no portable way to create reflinks (copy on write
+     * clones) in Java. Please note that hard links share all later changes,
+     * i.e. writing into one destination also changes all other destinations
+     * on the same file system.
+     * @param linkMode the handling of several destinations on the same file
+     * system
+     */
+    public void setLinkMode(LinkMode linkMode) {
+        this.linkMode = linkMode;
+    }
+
+    /**
+     * returns the handling of several destinations on the same file system
+     * @return the handling of several destinations on the same file system
+     */
+    public LinkMode getLinkMode() {
+        return linkMode;
+    }
+
+    /**
+     * Sets the reference directories (e.g. previous snapshots of the same
+     * source tree). Source files that did not change compared to their
+     * counterpart in a reference directory are not copied but hard linked
+     * from there. The reference directories are checked in the given order.
+     * Linked destination files share all later changes with the reference
+     * directories and must therefore not be modified in place.
+     * @param referenceDirectories the reference directories
+     */
+    public void setReferenceDirectories(String... referenceDirectories) {
+        this.referenceDirectories = referenceDirectories;
+    }
+
+    /**
+     * returns the reference directories
+     * @return the reference directories
+     */
+    public String[] getReferenceDirectories() {
+        return referenceDirectories;
+    }
+
+    /**
+     * sets the comparison of source files with their counterparts in the
+     * reference directories
+     * @param referenceComparison the comparison of source files with their
+     * counterparts in the reference directories
+     */
+    public void setReferenceComparison(
+            ReferenceComparison referenceComparison) {
+        this.referenceComparison = referenceComparison;
+    }
+
+    /**
+     * returns the comparison of source files with their counterparts in the
+     * reference directories
+     * @return the comparison of source files with their counterparts in the
+     * reference directories
+     */
+    public ReferenceComparison getReferenceComparison() {
+        return referenceComparison;
+    }
+
+    /**
+     * Enables or disables deduplication. When enabled, source files with the
+     * same content are copied only once per destination and all duplicates
+     * are hard linked to this copy.
+     * @param deduplicate if <tt>true</tt>, identical source files are copied
+     * only once per destination
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * returns <tt>true</tt> if identical source files are copied only once
+     * per destination, <tt>false</tt> otherwise
+     * @return <tt>true</tt> if identical source files are copied only once
+     * per destination, <tt>false</tt> otherwise
+     */
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Sets the compression level of zip copy jobs. Level <tt>0</tt> stores all
+     * entries without compression.
+     * @param compressionLevel the compression level (<tt>0</tt> - <tt>9</tt>
+     * or <tt>-1</tt> for the default compression level)
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if ((compressionLevel < -1) || (compressionLevel > 9)) {
+            throw new IllegalArgumentException(
+                    "compressionLevel must be between -1 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * returns the compression level of zip copy jobs
+     * @return the compression level of zip copy jobs
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the file name extensions of files that are already compressed.
+     * Zip copy jobs store these files without compressing them again. Other
+     * files are stored, too, when a quick probe of their first block shows
+     * that they can not be compressed.
+     * @param storedExtensions the file name extensions (without dot, case is
+     * ignored)
+     */
+    public void setStoredExtensions(String... storedExtensions) {
+        this.storedExtensions = storedExtensions;
+    }
+
+    /**
+     * returns the file name extensions of files that are already compressed
+     * @return the file name extensions of files that are already compressed
+     */
+    public String[] getStoredExtensions() {
+        return storedExtensions;
+    }
+
+    /**
+     * Enables or disables the update mode of zip copy jobs. When enabled, the
+     * entries of an existing archive are reused without compressing them
+     * again if their source file did not change (same name, size and
+     * modification time). Only new or modified source files are compressed.
+     * @param zipUpdate if <tt>true</tt>, existing archives are updated
+     */
+    public void setZipUpdate(boolean zipUpdate) {
+        this.zipUpdate = zipUpdate;
+    }
+
+    /**
+     * returns <tt>true</tt>, if existing archives are updated
+     * @return <tt>true</tt>, if existing archives are updated
+     */
+    public boolean isZipUpdate() {
+        return zipUpdate;
+    }
+
+    /**
+     * Sets the format of the archive created in archive mode. Tar archives are
+     * compressed with gzip using the compression level of the copy job.
+     * Updating existing archives is only supported for zip archives.
+     * @param archiveFormat the format of the archive created in archive mode
+     */
+    public void setArchiveFormat(ArchiveFormat archiveFormat) {
+        this.archiveFormat = archiveFormat;
+    }
+
+    /**
+     * returns the format of the archive created in archive mode
+     * @return the format of the archive created in archive mode
+     */
+    public ArchiveFormat getArchiveFormat() {
+        return archiveFormat;
+    }
+
+    /**
+     * sets the duplicates found when scanning the sources
+     * @param duplicates maps every duplicate source file to the first source
+     * file with the same content
+     */
+    void setDuplicates(Map<File, File> duplicates) {
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * returns the duplicates found when scanning the sources
+     * @return maps every duplicate source file to the first source file with
+     * the same content
+     */
+    Map<File, File> getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * sets the entries found when scanning the zip sources
+     * @param zipEntries maps every zip archive to the entries that must be
+     * extracted
+     */
+    void setZipEntries(Map<File, List<ZipArchiveEntry>> zipEntries) {
+        this.zipEntries = zipEntries;
+    }
+
+    /**
+     * returns the entries found when scanning the zip sources
+     * @return maps every zip archive to the entries that must be extracted
+     */
+    Map<File, List<ZipArchiveEntry>> getZipEntries() {
+        return zipEntries;
+    }
 }
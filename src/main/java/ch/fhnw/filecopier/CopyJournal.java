@@ -0,0 +1,283 @@
+/*
+ * CopyJournal.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only journal of the progress of a copy job. It records every
+ * completed source file and, periodically, the position within the file that
+ * is currently copied, so that an interrupted copy job can be resumed.
+ * <p>
+ * The journal is a text file with one record per line:
+ * <pre>
+ * T &lt;destination&gt;
+ * D &lt;size&gt; &lt;modification time&gt; &lt;source path&gt;
+ * P &lt;position&gt; &lt;size&gt; &lt;modification time&gt; &lt;source path&gt;
+ * </pre>
+ */
+class CopyJournal {
+
+    private final static Logger LOGGER =
+            Logger.getLogger(CopyJournal.class.getName());
+    private static final String HEADER = "filecopier-journal 1";
+    // the interval between two progress records in ms
+    private static final int INTERVAL = 5000;
+    private final File file;
+    private final String[] destinations;
+    private final Map<String, long[]> completedFiles =
+            new HashMap<String, long[]>();
+    private String progressPath;
+    private long[] progressRecord;
+    private Writer writer;
+    private FileOutputStream fileOutputStream;
+    private long lastSync;
+
+    /**
+     * creates a new CopyJournal
+     *
+     * @param file the journal file
+     * @param destinations the destinations of the copy job
+     */
+    public CopyJournal(File file, String[] destinations) {
+        this.file = file;
+        this.destinations = destinations;
+    }
+
+    /**
+     * Opens the journal. When the journal file already exists and belongs to
+     * the same destinations, all its records are loaded and new records are
+     * appended. Otherwise a new journal is started.
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void open() throws IOException {
+        boolean resume = file.exists() && load();
+        if (!resume) {
+            completedFiles.clear();
+            progressPath = null;
+        }
+        fileOutputStream = new FileOutputStream(file, resume);
+        writer = new BufferedWriter(
+                new OutputStreamWriter(fileOutputStream, "UTF-8"));
+        if (resume) {
+            // terminate a record that may have been cut off by a crash
+            writer.write('\n');
+        } else {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (String destination : destinations) {
+                writer.write("T ");
+                writer.write(new File(destination).getAbsolutePath());
+                writer.write('\n');
+            }
+            sync();
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * returns <tt>true</tt>, if the given source file was completely copied
+     * and did not change since then
+     *
+     * @param source the source file
+     * @return <tt>true</tt>, if the given source file was completely copied
+     * and did not change since then
+     */
+    public boolean isCompleted(File source) {
+        long[] record = completedFiles.get(source.getAbsolutePath());
+        return (record != null) && matches(source, record[0], record[1]);
+    }
+
+    /**
+     * returns the position where copying the given source file can be
+     * resumed
+     *
+     * @param source the source file
+     * @return the position where copying the given source file can be
+     * resumed or <tt>0</tt> if it must be copied from the start
+     */
+    public long getResumePosition(File source) {
+        if (source.getAbsolutePath().equals(progressPath)
+                && matches(source, progressRecord[1], progressRecord[2])) {
+            return progressRecord[0];
+        }
+        return 0;
+    }
+
+    /**
+     * returns <tt>true</tt>, if it is time to record the progress again
+     *
+     * @return <tt>true</tt>, if it is time to record the progress again
+     */
+    public boolean isProgressDue() {
+        return System.currentTimeMillis() - lastSync >= INTERVAL;
+    }
+
+    /**
+     * Records the progress within a source file. All data up to the given
+     * position must already be durably stored in all destinations.
+     *
+     * @param source the source file
+     * @param position the position up to where the source file was copied
+     * @throws IOException if an I/O exception occurs
+     */
+    public void progress(File source, long position) throws IOException {
+        writer.write("P " + position + ' ' + source.length() + ' '
+                + source.lastModified() + ' ' + source.getAbsolutePath()
+                + '\n');
+        sync();
+    }
+
+    /**
+     * Records a completed source file. The destinations of the source file
+     * must already be durably stored.
+     *
+     * @param source the source file
+     * @throws IOException if an I/O exception occurs
+     */
+    public void completed(File source) throws IOException {
+        writer.write("D " + source.length() + ' ' + source.lastModified()
+                + ' ' + source.getAbsolutePath() + '\n');
+        if (isProgressDue()) {
+            sync();
+        }
+    }
+
+    /**
+     * closes the journal
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void close() throws IOException {
+        if (writer != null) {
+            sync();
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * closes and removes the journal after the copy job was completed
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void delete() throws IOException {
+        close();
+        if (!file.delete()) {
+            throw new IOException("could not delete journal \"" + file + "\"");
+        }
+    }
+
+    private void sync() throws IOException {
+        writer.flush();
+        fileOutputStream.getFD().sync();
+        lastSync = System.currentTimeMillis();
+    }
+
+    private boolean load() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            if (!HEADER.equals(reader.readLine())) {
+                LOGGER.log(Level.WARNING,
+                        "ignoring unknown journal \"{0}\"", file);
+                return false;
+            }
+            String[] absoluteDestinations = new String[destinations.length];
+            for (int i = 0; i < destinations.length; i++) {
+                absoluteDestinations[i] =
+                        new File(destinations[i]).getAbsolutePath();
+            }
+            int destinationCount = 0;
+            for (String line = reader.readLine(); line != null;
+                    line = reader.readLine()) {
+                if (line.startsWith("T ")) {
+                    if ((destinationCount == destinations.length)
+                            || !line.substring(2).equals(
+                                    absoluteDestinations[destinationCount])) {
+                        LOGGER.log(Level.WARNING, "ignoring journal \"{0}\" "
+                                + "of other destinations", file);
+                        return false;
+                    }
+                    destinationCount++;
+                } else {
+                    try {
+                        parseRecord(line);
+                    } catch (NumberFormatException ex) {
+                        // the last record may be incomplete after a crash
+                        LOGGER.log(Level.WARNING,
+                                "ignoring corrupt journal record {0}", line);
+                    }
+                }
+            }
+            if (destinationCount != destinations.length) {
+                LOGGER.log(Level.WARNING, "ignoring journal \"{0}\" "
+                        + "of other destinations", file);
+                return false;
+            }
+            LOGGER.log(Level.INFO, "resuming from journal \"{0}\" with {1} "
+                    + "completed files", new Object[]{
+                        file, completedFiles.size()});
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void parseRecord(String line) {
+        if (line.startsWith("D ")) {
+            String[] tokens = line.split(" ", 4);
+            if (tokens.length == 4) {
+                completedFiles.put(tokens[3], new long[]{
+                    Long.parseLong(tokens[1]),
+                    Long.parseLong(tokens[2])
+                });
+            }
+        } else if (line.startsWith("P ")) {
+            String[] tokens = line.split(" ", 5);
+            if (tokens.length == 5) {
+                progressRecord = new long[]{
+                    Long.parseLong(tokens[1]),
+                    Long.parseLong(tokens[2]),
+                    Long.parseLong(tokens[3])
+                };
+                progressPath = tokens[4];
+            }
+        }
+    }
+
+    private static boolean matches(File source, long length, long modified) {
+        return (source.length() == length)
+                && (source.lastModified() == modified);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * CopyProgress.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+
+/**
+ * An immutable snapshot of the progress of a copy operation. Snapshots can be
+ * taken from any thread while the copy operation is running (see
+ * {@link FileCopier#getProgress()}).
+ */
+public class CopyProgress {
+
+    private final FileCopier.State state;
+    private final long byteCount;
+    private final long copiedBytes;
+    private final File currentFile;
+    private final long currentFileLength;
+    private final File[] destinations;
+    private final long[] destinationBytes;
+
+    /**
+     * creates a new CopyProgress
+     *
+     * @param state the state of the copier
+     * @param byteCount the byte count of all source files
+     * @param copiedBytes the sum of all bytes copied so far
+     * @param currentFile the file that is currently transferred or
+     * <tt>null</tt>, if no file is transferred
+     * @param currentFileLength the length of the current file
+     * @param destinations the destinations of the current file
+     * @param destinationBytes the number of bytes of the current file written
+     * to every destination
+     */
+    public CopyProgress(FileCopier.State state, long byteCount,
+            long copiedBytes, File currentFile, long currentFileLength,
+            File[] destinations, long[] destinationBytes) {
+        this.state = state;
+        this.byteCount = byteCount;
+        this.copiedBytes = copiedBytes;
+        this.currentFile = currentFile;
+        this.currentFileLength = currentFileLength;
+        this.destinations = destinations;
+        this.destinationBytes = destinationBytes;
+    }
+
+    /**
+     * returns the state of the copier
+     *
+     * @return the state of the copier
+     */
+    public FileCopier.State getState() {
+        return state;
+    }
+
+    /**
+     * returns the byte count of all source files
+     *
+     * @return the byte count of all source files
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * returns the sum of all bytes copied so far
+     *
+     * @return the sum of all bytes copied so far
+     */
+    public long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    /**
+     * returns the file that is currently transferred
+     *
+     * @return the file that is currently transferred or <tt>null</tt>, if no
+     * file is transferred
+     */
+    public File getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * returns the length of the file that is currently transferred
+     *
+     * @return the length of the file that is currently transferred
+     */
+    public long getCurrentFileLength() {
+        return currentFileLength;
+    }
+
+    /**
+     * returns the number of destinations of the current file
+     *
+     * @return the number of destinations of the current file
+     */
+    public int getDestinationCount() {
+        return destinations.length;
+    }
+
+    /**
+     * returns a destination of the current file
+     *
+     * @param index the index of the destination
+     * @return the destination of the current file
+     */
+    public File getDestination(int index) {
+        return destinations[index];
+    }
+
+    /**
+     * returns the number of bytes of the current file that were written to a
+     * destination
+     *
+     * @param index the index of the destination
+     * @return the number of bytes of the current file that were written to
+     * the destination
+     */
+    public long getDestinationBytes(int index) {
+        return destinationBytes[index];
+    }
+}
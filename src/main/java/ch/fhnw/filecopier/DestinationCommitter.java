@@ -0,0 +1,262 @@
+/*
+ * DestinationCommitter.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Makes completed destination files durable and visible according to the
+ * sync policy of a copy job. In atomic mode destination files are renamed from
+ * their temporary name to their final name after they were forced to the
+ * storage device, so that a crash never leaves a corrupt file under the final
+ * name.
+ */
+class DestinationCommitter {
+
+    private final static Logger LOGGER =
+            Logger.getLogger(DestinationCommitter.class.getName());
+    // the maximum number of files forced in parallel
+    private static final int MAX_THREADS = 8;
+    private final CopyJob.SyncPolicy syncPolicy;
+    private final int groupCommitFiles;
+    private final long groupCommitBytes;
+    private final List<File> pendingFiles = new ArrayList<File>();
+    private final List<File> pendingTargets = new ArrayList<File>();
+    private final Map<File, File> temporaryFiles = new HashMap<File, File>();
+    private long pendingBytes;
+
+    /**
+     * creates a new DestinationCommitter
+     *
+     * @param syncPolicy the policy for forcing destination files to the
+     * storage device, files must already be forced when they are added with
+     * {@link CopyJob.SyncPolicy#PER_FILE}
+     * @param groupCommitFiles the number of files after which a group commit
+     * is done
+     * @param groupCommitBytes the number of bytes after which a group commit
+     * is done
+     */
+    public DestinationCommitter(CopyJob.SyncPolicy syncPolicy,
+            int groupCommitFiles, long groupCommitBytes) {
+        this.syncPolicy = syncPolicy;
+        this.groupCommitFiles = groupCommitFiles;
+        this.groupCommitBytes = groupCommitBytes;
+    }
+
+    /**
+     * returns the temporary file used for writing a destination file in
+     * atomic mode
+     *
+     * @param destination the destination file
+     * @return the temporary file used for writing the destination file
+     */
+    public static File getTemporaryFile(File destination) {
+        // the name must not change between runs so that a journal can resume
+        // writing a temporary file
+        return new File(destination.getParentFile(),
+                '.' + destination.getName() + ".filecopier-part");
+    }
+
+    /**
+     * returns the file that currently holds the content of a destination
+     *
+     * @param target the final name of a destination file
+     * @return the temporary file of the destination file if it was not yet
+     * renamed, otherwise the destination file itself
+     */
+    public File getWrittenFile(File target) {
+        File temporaryFile = temporaryFiles.get(target);
+        return (temporaryFile == null) ? target : temporaryFile;
+    }
+
+    /**
+     * adds a completed destination file
+     *
+     * @param file the completed destination file
+     * @param target the final name of the destination file in atomic mode or
+     * <tt>null</tt>, if the file already has its final name
+     * @throws IOException if an I/O exception occurs
+     */
+    public void add(File file, File target) throws IOException {
+        pendingFiles.add(file);
+        pendingTargets.add(target);
+        if (target != null) {
+            temporaryFiles.put(target, file);
+        }
+        pendingBytes += file.length();
+        switch (syncPolicy) {
+            case NONE:
+            case PER_FILE:
+                commit();
+                break;
+            case GROUP_COMMIT:
+                if ((pendingFiles.size() >= groupCommitFiles)
+                        || (pendingBytes >= groupCommitBytes)) {
+                    commit();
+                }
+        }
+    }
+
+    /**
+     * forces all pending files to the storage device (if required by the sync
+     * policy) and renames them to their final names
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void commit() throws IOException {
+        if (pendingFiles.isEmpty()) {
+            return;
+        }
+        if ((syncPolicy == CopyJob.SyncPolicy.GROUP_COMMIT)
+                || (syncPolicy == CopyJob.SyncPolicy.END_OF_JOB)) {
+            LOGGER.log(Level.INFO, "forcing {0} files ({1} byte)",
+                    new Object[]{pendingFiles.size(), pendingBytes});
+            forceAll(pendingFiles);
+        }
+
+        Set<File> directories = new LinkedHashSet<File>();
+        for (int i = 0, size = pendingFiles.size(); i < size; i++) {
+            File file = pendingFiles.get(i);
+            File target = pendingTargets.get(i);
+            if (target != null) {
+                rename(file, target);
+                file = target;
+            }
+            directories.add(file.getAbsoluteFile().getParentFile());
+        }
+        if (syncPolicy != CopyJob.SyncPolicy.NONE) {
+            // make the new directory entries durable
+            for (File directory : directories) {
+                forceDirectory(directory);
+            }
+        }
+
+        pendingFiles.clear();
+        pendingTargets.clear();
+        temporaryFiles.clear();
+        pendingBytes = 0;
+    }
+
+    /**
+     * removes all pending temporary files (used when a copy job failed or was
+     * cancelled)
+     */
+    public void discard() {
+        for (int i = 0, size = pendingFiles.size(); i < size; i++) {
+            File file = pendingFiles.get(i);
+            // a failed commit may have renamed some files already
+            if ((pendingTargets.get(i) != null) && file.exists()
+                    && !file.delete()) {
+                LOGGER.log(Level.WARNING,
+                        "could not remove \"{0}\"", file);
+            }
+        }
+        pendingFiles.clear();
+        pendingTargets.clear();
+        temporaryFiles.clear();
+        pendingBytes = 0;
+    }
+
+    private void forceAll(List<File> files) throws IOException {
+        // forcing many files concurrently lets the file system merge the
+        // necessary journal commits
+        ExecutorService executorService = Executors.newFixedThreadPool(
+                Math.min(files.size(), MAX_THREADS));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final File file : files) {
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        // some platforms (e.g. Windows) can only force
+                        // files that are open for writing
+                        FileChannel channel = FileChannel.open(
+                                file.toPath(), StandardOpenOption.WRITE);
+                        try {
+                            channel.force(true);
+                        } finally {
+                            channel.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException("interrupted while forcing files", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("could not force files", ex.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static void rename(File file, File target) throws IOException {
+        LOGGER.log(Level.FINE, "renaming \"{0}\" to \"{1}\"",
+                new Object[]{file, target});
+        try {
+            Files.move(file.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            LOGGER.log(Level.WARNING, "could not atomically rename \"{0}\"",
+                    file);
+            Files.move(file.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void forceDirectory(File directory) {
+        try {
+            FileChannel channel = FileChannel.open(
+                    directory.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException ex) {
+            // not all platforms support forcing directories (e.g. Windows)
+            LOGGER.log(Level.FINE, "could not force directory " + directory,
+                    ex);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * EventDispatcher.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeSupport;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers property change events to listeners on a separate thread, so that
+ * slow listeners never stall the threads that fire the events. Events of
+ * counter properties are coalesced: while an event is waiting for delivery,
+ * newer events of the same property just replace its value, and such events
+ * are delivered at a limited rate. All other events are delivered in the
+ * order they were fired.
+ */
+class EventDispatcher {
+
+    private final static Logger LOGGER =
+            Logger.getLogger(EventDispatcher.class.getName());
+    // the time the dispatcher thread waits for new events before it ends
+    private static final long KEEP_ALIVE_TIME = 1000; // ms
+    private final PropertyChangeSupport propertyChangeSupport;
+    private final int maxRate;
+    private final long minInterval;
+    private final Set<String> coalescedProperties;
+    private final ConcurrentLinkedQueue<Object> queue =
+            new ConcurrentLinkedQueue<Object>();
+    // the latest values of coalesced events that are waiting for delivery
+    private final ConcurrentMap<String, PropertyChangeEvent> pendingEvents =
+            new ConcurrentHashMap<String, PropertyChangeEvent>();
+    // only used by the dispatcher thread
+    private final Map<String, Object> deliveredValues =
+            new HashMap<String, Object>();
+    private final Map<String, Long> deliveryTimes = new HashMap<String, Long>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ThreadPoolExecutor executor;
+    private final Runnable dispatchTask = new Runnable() {
+
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    /**
+     * creates a new EventDispatcher
+     *
+     * @param propertyChangeSupport the support that delivers the events to
+     * the listeners
+     * @param maxRate the maximum number of coalesced events per second and
+     * property
+     * @param coalescedProperties the properties whose events are coalesced
+     */
+    public EventDispatcher(PropertyChangeSupport propertyChangeSupport,
+            int maxRate, String... coalescedProperties) {
+        if (maxRate <= 0) {
+            throw new IllegalArgumentException(
+                    "maxRate must be positive: " + maxRate);
+        }
+        this.propertyChangeSupport = propertyChangeSupport;
+        this.maxRate = maxRate;
+        minInterval = TimeUnit.SECONDS.toNanos(1) / maxRate;
+        this.coalescedProperties =
+                new HashSet<String>(Arrays.asList(coalescedProperties));
+        // a single thread that ends when there is nothing to deliver
+        executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_TIME,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(
+                                runnable, "FileCopier event dispatcher");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * returns the maximum number of coalesced events per second and property
+     *
+     * @return the maximum number of coalesced events per second and property
+     */
+    public int getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * Queues an event for delivery. This method never waits for listeners.
+     *
+     * @param event the event to deliver
+     */
+    public void fire(PropertyChangeEvent event) {
+        String property = event.getPropertyName();
+        if (!propertyChangeSupport.hasListeners(property)) {
+            return;
+        }
+        if (coalescedProperties.contains(property)
+                && (pendingEvents.put(property, event) != null)) {
+            // an older event of this property is still queued and will be
+            // delivered with the new value
+            return;
+        }
+        queue.offer(event);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(dispatchTask);
+        }
+    }
+
+    /**
+     * Waits until all events that were fired so far are delivered. The next
+     * coalesced events are then reported relative to their first old value
+     * again.
+     *
+     * @throws InterruptedException if the current thread was interrupted
+     * while waiting
+     */
+    public void flush() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.offer(latch);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(dispatchTask);
+        }
+        latch.await();
+    }
+
+    private void dispatch() {
+        do {
+            for (Object item = queue.poll(); item != null;
+                    item = queue.poll()) {
+                if (item instanceof CountDownLatch) {
+                    deliveredValues.clear();
+                    ((CountDownLatch) item).countDown();
+                } else {
+                    deliver((PropertyChangeEvent) item);
+                }
+            }
+            scheduled.set(false);
+            // an event may have been queued after the last poll
+        } while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    private void deliver(PropertyChangeEvent event) {
+        String property = event.getPropertyName();
+        if (coalescedProperties.contains(property)) {
+            // limit the rate of coalesced events, the values coalesce while
+            // we are waiting
+            Long deliveryTime = deliveryTimes.get(property);
+            if (deliveryTime != null) {
+                long waitTime = deliveryTime + minInterval - System.nanoTime();
+                if (waitTime > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(waitTime);
+                    } catch (InterruptedException ex) {
+                        LOGGER.log(Level.WARNING,
+                                "event dispatcher was interrupted", ex);
+                    }
+                }
+            }
+            deliveryTimes.put(property, System.nanoTime());
+
+            // report the latest value relative to the last delivered one
+            PropertyChangeEvent latestEvent = pendingEvents.remove(property);
+            Object oldValue = deliveredValues.containsKey(property)
+                    ? deliveredValues.get(property)
+                    : event.getOldValue();
+            event = new PropertyChangeEvent(event.getSource(), property,
+                    oldValue, latestEvent.getNewValue());
+            deliveredValues.put(property, latestEvent.getNewValue());
+        }
+        try {
+            propertyChangeSupport.firePropertyChange(event);
+        } catch (RuntimeException ex) {
+            // a broken listener must not stop the delivery of other events
+            LOGGER.log(Level.WARNING, "property change listener failed", ex);
+        }
+    }
+}
@@ -20,26 +20,68 @@
  */
 package ch.fhnw.filecopier;
 
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * A class for copying files and directories. It can be used headless. This
@@ -54,13 +96,27 @@ public class FileCopier {
      */
     public final static String FILE_PROPERTY = "file";
     /**
-     * the string used for the byte counter property
+     * the string used for the byte counter property (the copied bytes are
+     * sampled every 100 ms and at the end of the copy operation)
      */
     public final static String BYTE_COUNTER_PROPERTY = "byte_counter";
     /**
      * the string used for the state property
      */
     public final static String STATE_PROPERTY = "state";
+    /**
+     * the string used for the verified byte counter property
+     */
+    public final static String VERIFY_COUNTER_PROPERTY = "verify_counter";
+    /**
+     * the string used for the compared byte counter property of delta
+     * updates
+     */
+    public final static String DELTA_COMPARED_PROPERTY = "delta_compared";
+    /**
+     * the string used for the written byte counter property of delta updates
+     */
+    public final static String DELTA_WRITTEN_PROPERTY = "delta_written";
 
     /**
      * the state of the FileCopier
@@ -81,30 +137,140 @@ public class FileCopier {
          */
         COPYING,
         /**
-         * the FileCopier finished copying files and directories
+         * the FileCopier is reading back the destinations and compares them
+         * with the sources
+         */
+        VERIFYING,
+        /**
+         * the FileCopier finished copying files and directories (also when
+         * the copy operation failed or was cancelled)
          */
         END
     }
-    private State state = State.START;
+    private volatile State state = State.START;
+
+    /**
+     * the stages of a copy operation whose latencies are recorded (see
+     * {@link #getLatencyHistogram(ch.fhnw.filecopier.FileCopier.Stage)})
+     */
+    public enum Stage {
+
+        /**
+         * listing a source directory and reading the attributes of its
+         * entries
+         */
+        SCAN,
+        /**
+         * creating a destination directory
+         */
+        MKDIR,
+        /**
+         * creating a destination file and opening the channels of a
+         * destination
+         */
+        OPEN,
+        /**
+         * transferring a slice to a destination
+         */
+        TRANSFER,
+        /**
+         * closing the channels of a destination
+         */
+        CLOSE
+    }
+    private final Map<Stage, LatencyHistogram> latencyHistograms =
+            createLatencyHistograms();
     private final static Logger LOGGER =
             Logger.getLogger(FileCopier.class.getName());
     // the copy intervall we want to get in ms
     private static final int WANTED_TIME = 1000;
+    /**
+     * the default maximum number of progress events per second and counter
+     */
+    public static final int DEFAULT_MAX_EVENT_RATE = 20;
     private final PropertyChangeSupport propertyChangeSupport =
             new PropertyChangeSupport(this);
-    private long byteCount;
-    private long oldCopiedBytes;
-    private long copiedBytes;
+    // delivers events asynchronously, unless events are delivered directly
+    private volatile EventDispatcher eventDispatcher =
+            createEventDispatcher(DEFAULT_MAX_EVENT_RATE);
+    private volatile long byteCount;
+    // updated by all transfer threads and read from any thread
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private volatile FileProgress fileProgress;
+    private volatile long fileCount;
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final ThroughputEstimator throughputEstimator =
+            new ThroughputEstimator();
+    // the copying threads only add to the counters, a sampler thread feeds
+    // the throughput estimator and the byte counter listeners
+    private ScheduledExecutorService progressSampler;
+    private volatile long sampledBytes;
+    private final AtomicLong failedCopies = new AtomicLong();
+    // the bandwidth limit in byte/s, 0 means unlimited
+    private volatile long maxBandwidth;
+    private long throttleStartTime;
+    private long throttleBytes;
+    private ObjectName mBeanName;
+    // the counters are published into this file while copying
+    private volatile File statsFile;
+    private volatile int statsInterval = PROGRESS_INTERVAL;
+    private static final AtomicInteger MBEAN_COUNTER = new AtomicInteger();
     private final static NumberFormat NUMBER_FORMAT =
             NumberFormat.getInstance();
     private long position;
     private long sourceLength;
-    private long slice = 1048576; // 1 MiB
-    private int bufferSlice = 2048;
+    private volatile long slice = 1048576; // 1 MiB
     private long transferVolume;
     private long sliceStartTime;
+    private Object sliceEvent;
+    private static final CopyEvents COPY_EVENTS = CopyEvents.getInstance();
     private CyclicBarrier barrier;
     private BarrierAction barrierAction = new BarrierAction();
+    private CopyJournal journal;
+    private DestinationCommitter committer;
+    private boolean forceDestinations;
+    private volatile boolean cancelled;
+    private volatile boolean removePartialDestinations;
+    private boolean paused;
+    private final Object pauseLock = new Object();
+    // only changed by the BarrierAction, so that all parties see the same value
+    private boolean stopTransfer;
+    // set by a party that could not transfer its slice, all parties stop at
+    // the next barrier
+    private volatile boolean transferFailed;
+    private final List<File> partialDestinations = new ArrayList<File>();
+    private ParallelDeflater deflater;
+    // all delta updates of a copy job share the threads and block buffers
+    private ExecutorService deltaExecutor;
+    private final Queue<ByteBuffer[]> deltaBuffers =
+            new ConcurrentLinkedQueue<ByteBuffer[]>();
+    private ZipArchiveReader zipReader;
+    private File[] archiveDestinations;
+    private final LinkedList<PendingEntry> pendingEntries =
+            new LinkedList<PendingEntry>();
+    private int chunksInFlight;
+    private File currentSource;
+    private FileChannel[] destinationChannels;
+    // the digest algorithm used for verification, it only has to detect
+    // media and transfer errors, not malicious modifications
+    private static final String DIGEST_ALGORITHM = "MD5";
+    // duplicates are never compared byte by byte, so we need a digest
+    // without known collisions
+    private static final String DEDUPLICATION_ALGORITHM = "SHA-256";
+    private static final int VERIFY_BUFFER_SIZE = 1048576; // 1 MiB
+    // the amount of data that is transferred into archives between progress
+    // updates
+    private static final int ARCHIVE_SLICE_SIZE = 8388608; // 8 MiB
+    // the interval of sampled progress updates (in ms)
+    private static final int PROGRESS_INTERVAL = 100;
+    private final List<VerificationTask> verificationTasks =
+            new ArrayList<VerificationTask>();
+    private long verifyByteCount;
+    private final AtomicLong verifiedBytes = new AtomicLong();
+    private VerificationReport verificationReport = new VerificationReport();
+    private final AtomicLong deltaComparedBytes = new AtomicLong();
+    private final AtomicLong deltaWrittenBytes = new AtomicLong();
+    private final AtomicLong linkedBytes = new AtomicLong();
 
     /**
      * Add a listener for property changes.
@@ -130,6 +296,93 @@ public class FileCopier {
                 property, listener);
     }
 
+    /**
+     * Sets the maximum rate of progress events. By default, all events are
+     * delivered on a separate thread with at most
+     * {@link #DEFAULT_MAX_EVENT_RATE} events per second and counter, so that
+     * slow listeners never stall the copy operation. Intermediate updates of
+     * the byte, verify and delta counters are coalesced and only their latest
+     * values are delivered. {@link #copy(ch.fhnw.filecopier.CopyJob[])}
+     * returns only after all of its events were delivered. With a maximum
+     * rate of <tt>0</tt>, listeners are called directly by the threads that
+     * fire the events, which lets a slow listener stall the copy operation.
+     *
+     * @param maxEventRate the maximum number of events per second and counter
+     * or <tt>0</tt>, if events should be delivered directly
+     */
+    public void setMaxEventRate(int maxEventRate) {
+        if (maxEventRate < 0) {
+            throw new IllegalArgumentException(
+                    "maxEventRate must not be negative: " + maxEventRate);
+        }
+        eventDispatcher = createEventDispatcher(maxEventRate);
+    }
+
+    private EventDispatcher createEventDispatcher(int maxEventRate) {
+        return (maxEventRate == 0) ? null
+                : new EventDispatcher(propertyChangeSupport, maxEventRate,
+                BYTE_COUNTER_PROPERTY, VERIFY_COUNTER_PROPERTY,
+                DELTA_COMPARED_PROPERTY, DELTA_WRITTEN_PROPERTY);
+    }
+
+    /**
+     * returns the maximum rate of progress events
+     *
+     * @return the maximum number of events per second and counter or
+     * <tt>0</tt>, if events are delivered directly
+     */
+    public int getMaxEventRate() {
+        EventDispatcher dispatcher = eventDispatcher;
+        return (dispatcher == null) ? 0 : dispatcher.getMaxRate();
+    }
+
+    /**
+     * Sets the stats file. While copying, the state, counters, bandwidth and
+     * index of the current file are published into this small memory-mapped
+     * file, so that other processes (e.g. shell scripts) can watch the
+     * progress without JMX (see {@link StatsFileReader} for the layout). The
+     * stats file is updated by a separate thread, the copying threads never
+     * touch it.
+     *
+     * @param statsFile the stats file or <tt>null</tt>, if no stats file
+     * should be written
+     */
+    public void setStatsFile(File statsFile) {
+        this.statsFile = statsFile;
+    }
+
+    /**
+     * returns the stats file
+     *
+     * @return the stats file or <tt>null</tt>, if no stats file is written
+     */
+    public File getStatsFile() {
+        return statsFile;
+    }
+
+    /**
+     * sets the interval between updates of the stats file
+     *
+     * @param statsInterval the interval between updates of the stats file
+     * (in ms)
+     */
+    public void setStatsInterval(int statsInterval) {
+        if (statsInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "statsInterval must be positive: " + statsInterval);
+        }
+        this.statsInterval = statsInterval;
+    }
+
+    /**
+     * returns the interval between updates of the stats file
+     *
+     * @return the interval between updates of the stats file (in ms)
+     */
+    public int getStatsInterval() {
+        return statsInterval;
+    }
+
     /**
      * returns the byte count of all source files
      *
@@ -145,7 +398,270 @@ public class FileCopier {
      * @return the sum of all bytes copied so far
      */
     public long getCopiedBytes() {
-        return copiedBytes;
+        return copiedBytes.get();
+    }
+
+    /**
+     * returns the number of all source files and directories
+     *
+     * @return the number of all source files and directories
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * returns the number of source files and directories copied so far
+     *
+     * @return the number of source files and directories copied so far
+     */
+    public long getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    /**
+     * returns the estimator of the throughput of the copy operation
+     *
+     * @return the estimator of the throughput of the copy operation
+     */
+    public ThroughputEstimator getThroughputEstimator() {
+        return throughputEstimator;
+    }
+
+    /**
+     * estimates the time needed for the rest of the copy operation (see
+     * {@link ThroughputEstimator})
+     *
+     * @return the estimated remaining time (in ms) or <tt>-1</tt>, if the
+     * remaining time can not be estimated yet
+     */
+    public long getRemainingTime() {
+        return throughputEstimator.getRemainingTime(
+                byteCount - copiedBytes.get(),
+                fileCount - copiedFiles.get());
+    }
+
+    /**
+     * returns the state of the copier
+     *
+     * @return the state of the copier
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the latencies of a stage of the copy operation. The histograms
+     * are reset at the start of every copy operation.
+     *
+     * @param stage the stage of the copy operation
+     * @return the latencies of the stage
+     */
+    public LatencyHistogram getLatencyHistogram(Stage stage) {
+        return latencyHistograms.get(stage);
+    }
+
+    /**
+     * returns the size of the slices the files are currently copied in
+     *
+     * @return the size of the slices the files are currently copied in
+     */
+    public long getSliceSize() {
+        return slice;
+    }
+
+    /**
+     * returns the number of failed file transfers and other errors that
+     * stopped a copy operation (not counting cancelled copy operations)
+     *
+     * @return the number of failed file transfers and other errors that
+     * stopped a copy operation
+     */
+    public long getFailedCopies() {
+        return failedCopies.get();
+    }
+
+    /**
+     * Limits the bandwidth of the copy operation. The limit applies to the
+     * data volume that is read from the sources and can be changed while a
+     * copy operation is running.
+     *
+     * @param maxBandwidth the maximum bandwidth in byte/s or <tt>0</tt>, if
+     * the bandwidth should not be limited
+     */
+    public void setMaxBandwidth(long maxBandwidth) {
+        if (maxBandwidth < 0) {
+            throw new IllegalArgumentException(
+                    "maxBandwidth must not be negative: " + maxBandwidth);
+        }
+        synchronized (pauseLock) {
+            this.maxBandwidth = maxBandwidth;
+            // the new limit starts now
+            throttleBytes = 0;
+            throttleStartTime = System.nanoTime();
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * returns the bandwidth limit of the copy operation
+     *
+     * @return the maximum bandwidth in byte/s or <tt>0</tt>, if the bandwidth
+     * is not limited
+     */
+    public long getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    /**
+     * Registers a {@link FileCopierMXBean} of this copier at the platform
+     * MBean server. The MBean is named
+     * "ch.fhnw.filecopier:type=FileCopier,name=\"FileCopier-&lt;n&gt;\"".
+     *
+     * @return the name of the MBean
+     * @throws JMException if the MBean could not be registered
+     */
+    public ObjectName registerMBean() throws JMException {
+        return registerMBean("FileCopier-" + MBEAN_COUNTER.incrementAndGet());
+    }
+
+    /**
+     * Registers a {@link FileCopierMXBean} of this copier at the platform
+     * MBean server. The MBean is named
+     * "ch.fhnw.filecopier:type=FileCopier,name=\"&lt;name&gt;\"". Every
+     * copier can be registered only once, call {@link #unregisterMBean()}
+     * when the copier is no longer used.
+     *
+     * @param name the name of the copier
+     * @return the name of the MBean
+     * @throws JMException if the MBean could not be registered
+     */
+    public synchronized ObjectName registerMBean(String name)
+            throws JMException {
+        if (mBeanName != null) {
+            throw new InstanceAlreadyExistsException(
+                    "copier is already registered as " + mBeanName);
+        }
+        ObjectName objectName = new ObjectName(
+                "ch.fhnw.filecopier:type=FileCopier,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new FileCopierManagement(this), objectName);
+        mBeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * unregisters the MBean of this copier from the platform MBean server
+     *
+     * @throws JMException if the MBean could not be unregistered
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (mBeanName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    mBeanName);
+            mBeanName = null;
+        }
+    }
+
+    /**
+     * returns the throughput of every destination of the current file
+     *
+     * @return the throughput of every destination of the current file (in
+     * byte/s)
+     */
+    double[] getDestinationThroughputs() {
+        FileProgress currentProgress = fileProgress;
+        if (currentProgress == null) {
+            return new double[0];
+        }
+        long now = System.nanoTime();
+        double[] throughputs =
+                new double[currentProgress.getDestinations().length];
+        for (int i = 0; i < throughputs.length; i++) {
+            throughputs[i] = currentProgress.getThroughput(i, now);
+        }
+        return throughputs;
+    }
+
+    /**
+     * Returns a snapshot of the progress of the copy operation. This method
+     * can be called from any thread and does not block the copy operation.
+     *
+     * @return a snapshot of the progress of the copy operation
+     */
+    public CopyProgress getProgress() {
+        // read the file progress first, its destinations never lag behind the
+        // copied bytes
+        FileProgress currentProgress = fileProgress;
+        if (currentProgress == null) {
+            return new CopyProgress(state, byteCount, copiedBytes.get(),
+                    null, 0, new File[0], new long[0]);
+        }
+        File[] destinations = currentProgress.getDestinations();
+        long[] destinationBytes = new long[destinations.length];
+        for (int i = 0; i < destinations.length; i++) {
+            destinationBytes[i] = currentProgress.getWrittenBytes(i);
+        }
+        return new CopyProgress(state, byteCount, copiedBytes.get(),
+                currentProgress.getSource(), currentProgress.getLength(),
+                destinations.clone(), destinationBytes);
+    }
+
+    /**
+     * returns the byte count of all destination files to verify
+     *
+     * @return the byte count of all destination files to verify
+     */
+    public long getVerifyByteCount() {
+        return verifyByteCount;
+    }
+
+    /**
+     * returns the sum of all bytes verified so far
+     *
+     * @return the sum of all bytes verified so far
+     */
+    public long getVerifiedBytes() {
+        return verifiedBytes.get();
+    }
+
+    /**
+     * returns the sum of all source bytes compared so far by delta updates
+     *
+     * @return the sum of all source bytes compared so far by delta updates
+     */
+    public long getDeltaComparedBytes() {
+        return deltaComparedBytes.get();
+    }
+
+    /**
+     * returns the sum of all bytes written so far by delta updates
+     *
+     * @return the sum of all bytes written so far by delta updates
+     */
+    public long getDeltaWrittenBytes() {
+        return deltaWrittenBytes.get();
+    }
+
+    /**
+     * returns the sum of all bytes that did not have to be written because
+     * destination files were hard linked to existing files
+     *
+     * @return the sum of all bytes that did not have to be written because
+     * destination files were hard linked to existing files
+     */
+    public long getLinkedBytes() {
+        return linkedBytes.get();
+    }
+
+    /**
+     * returns the summary of the last verification
+     *
+     * @return the summary of the last verification
+     */
+    public VerificationReport getVerificationReport() {
+        return verificationReport;
     }
 
     /**
@@ -154,10 +670,70 @@ public class FileCopier {
     public void reset() {
         State previousState = state;
         state = State.START;
-        propertyChangeSupport.firePropertyChange(
+        firePropertyChange(
                 STATE_PROPERTY, previousState, state);
     }
 
+    /**
+     * Cancels the running copy operation. The transfer stops after the
+     * current slice and {@link #copy(ch.fhnw.filecopier.CopyJob[])} throws an
+     * {@link InterruptedIOException}. A journal of the copy job is kept so
+     * that the copy job can be resumed later. Calling this method has no
+     * effect when no copy operation is running, every copy operation starts
+     * uncancelled.
+     */
+    public void cancel() {
+        cancel(false);
+    }
+
+    /**
+     * Cancels the running copy operation. The transfer stops after the
+     * current slice and {@link #copy(ch.fhnw.filecopier.CopyJob[])} throws an
+     * {@link InterruptedIOException}. Calling this method has no effect when
+     * no copy operation is running, every copy operation starts uncancelled.
+     *
+     * @param removePartialDestinations if <tt>true</tt>, all destination
+     * files that were not completely written are removed
+     */
+    public void cancel(boolean removePartialDestinations) {
+        this.removePartialDestinations = removePartialDestinations;
+        synchronized (pauseLock) {
+            cancelled = true;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Pauses the running copy operation after the current slice. All files
+     * stay open while the copy operation is paused.
+     */
+    public void pause() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+    }
+
+    /**
+     * resumes a paused copy operation
+     */
+    public void resume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * returns <tt>true</tt>, if the copy operation is paused
+     *
+     * @return <tt>true</tt>, if the copy operation is paused
+     */
+    public boolean isPaused() {
+        synchronized (pauseLock) {
+            return paused;
+        }
+    }
+
     /**
      * copies source files to a given destination
      *
@@ -165,13 +741,85 @@ public class FileCopier {
      * @throws java.io.IOException if an I/O exception occurs
      */
     public void copy(CopyJob... copyJobs) throws IOException {
+        StatsFileWriter statsFileWriter = openStatsFile();
+        long previousFailures = failedCopies.get();
+        try {
+            executeCopyJobs(copyJobs);
+        } catch (InterruptedIOException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            // failed file transfers were already counted where they happened
+            if (failedCopies.get() == previousFailures) {
+                failedCopies.incrementAndGet();
+            }
+            throw ex;
+        } finally {
+            // the final progress is reported before the end of the copy
+            // operation
+            stopSampling();
+            State previousState = state;
+            state = State.END;
+            firePropertyChange(
+                    STATE_PROPERTY, previousState, state);
+            flushEvents();
+            closeStatsFile(statsFileWriter);
+        }
+    }
+
+    private StatsFileWriter openStatsFile() {
+        File file = statsFile;
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new StatsFileWriter(file, this, statsInterval);
+        } catch (IOException ex) {
+            // monitoring must not prevent copying
+            LOGGER.log(Level.WARNING, "could not open stats file " + file, ex);
+            return null;
+        }
+    }
+
+    private static void closeStatsFile(StatsFileWriter statsFileWriter) {
+        if (statsFileWriter != null) {
+            try {
+                statsFileWriter.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "could not close stats file", ex);
+            }
+        }
+    }
+
+    private void executeCopyJobs(CopyJob... copyJobs) throws IOException {
+        synchronized (pauseLock) {
+            // a copy that was paused and then cancelled must not block the
+            // next one
+            cancelled = false;
+            paused = false;
+        }
+        partialDestinations.clear();
         byteCount = 0;
-        copiedBytes = 0;
+        copiedBytes.set(0);
+        fileProgress = null;
+        fileCount = 0;
+        copiedFiles.set(0);
+        sampledBytes = 0;
+        startSampling();
+        for (LatencyHistogram latencyHistogram : latencyHistograms.values()) {
+            latencyHistogram.reset();
+        }
+        verifyByteCount = 0;
+        verifiedBytes.set(0);
+        deltaComparedBytes.set(0);
+        deltaWrittenBytes.set(0);
+        linkedBytes.set(0);
+        verificationTasks.clear();
+        verificationReport = new VerificationReport();
 
         // feed our property change listeners
         State previousState = state;
         state = State.CHECKING_SOURCE;
-        propertyChangeSupport.firePropertyChange(
+        firePropertyChange(
                 STATE_PROPERTY, previousState, state);
 
         // scan all sources of all copyJobs and store the directoryInfos
@@ -182,7 +830,24 @@ public class FileCopier {
             }
             Source[] sources = copyJob.getSources();
             List<DirectoryInfo> directoryInfos = new ArrayList<DirectoryInfo>();
+            Map<File, List<ZipArchiveEntry>> zipEntries =
+                    new LinkedHashMap<File, List<ZipArchiveEntry>>();
             for (Source source : sources) {
+                if (source instanceof ZipSource) {
+                    File archive = ((ZipSource) source).getArchive();
+                    List<ZipArchiveEntry> entries = expandZipSource(
+                            archive, source.getPattern());
+                    if (zipEntries.containsKey(archive)) {
+                        zipEntries.get(archive).addAll(entries);
+                    } else {
+                        zipEntries.put(archive, entries);
+                    }
+                    for (ZipArchiveEntry entry : entries) {
+                        byteCount += entry.getSize();
+                    }
+                    fileCount += entries.size();
+                    continue;
+                }
                 File baseDirectory = source.getBaseDirectory();
                 int baseDirectoryPathLength;
                 String baseDirectoryPath = baseDirectory.getPath();
@@ -205,6 +870,10 @@ public class FileCopier {
                 }
             }
             copyJob.setDirectoryInfos(directoryInfos);
+            copyJob.setZipEntries(zipEntries);
+            if (copyJob.isDeduplicate() && !copyJob.isArchive()) {
+                copyJob.setDuplicates(findDuplicates(directoryInfos));
+            }
             if (LOGGER.isLoggable(Level.INFO)) {
                 StringBuilder stringBuilder =
                         new StringBuilder("source files:\n");
@@ -226,6 +895,7 @@ public class FileCopier {
             LOGGER.info("there are no files to copy");
             return;
         }
+        this.fileCount = fileCount;
 
         // do all known sanity checks
         for (CopyJob copyJob : copyJobs) {
@@ -233,6 +903,18 @@ public class FileCopier {
             if (copyJob == null) {
                 continue;
             }
+            if (!copyJob.getZipEntries().isEmpty()) {
+                if (copyJob.isArchive()) {
+                    throw new IOException(
+                            "can not copy zip sources into an archive");
+                }
+                for (String destination : copyJob.getDestinations()) {
+                    if (new File(destination).isFile()) {
+                        throw new IOException("can not extract zip sources "
+                                + "into file \"" + destination + '"');
+                    }
+                }
+            }
             // get number of source files in this job
             List<DirectoryInfo> directoryInfos = copyJob.getDirectoryInfos();
             int sourceCount = 0;
@@ -247,7 +929,7 @@ public class FileCopier {
             String[] destinations = copyJob.getDestinations();
             for (String destination : destinations) {
                 File destinationFile = new File(destination);
-                if (destinationFile.isFile() && !copyJob.isZip()) {
+                if (destinationFile.isFile() && !copyJob.isArchive()) {
                     if (sourceCount == 1) {
                         File sourceFile =
                                 directoryInfos.get(0).getFiles().get(0);
@@ -278,7 +960,12 @@ public class FileCopier {
         // feed our property change listeners
         previousState = state;
         state = State.COPYING;
-        propertyChangeSupport.firePropertyChange(
+        throughputEstimator.reset(System.nanoTime());
+        synchronized (pauseLock) {
+            throttleStartTime = System.nanoTime();
+            throttleBytes = 0;
+        }
+        firePropertyChange(
                 STATE_PROPERTY, previousState, state);
 
         // execute all copy jobs
@@ -288,83 +975,423 @@ public class FileCopier {
                 continue;
             }
 
-            ZipOutputStream zos = null;
-            if (copyJob.isZip()) {
-                zos = getZOS(copyJob.getDirectoryInfos().get(0), copyJob.getDestinations());
-            }
-            for (DirectoryInfo directoryInfo : copyJob.getDirectoryInfos()) {
-                for (File sourceFile : directoryInfo.getFiles()) {
-                    File[] destinationFiles = getDestinationFiles(
-                            directoryInfo.getBaseDirectory(),
-                            sourceFile, copyJob.getDestinations());
-                    if (sourceFile.isDirectory()) {
-                        // make target directories (sequentially)
-                        for (File destinationFile : destinationFiles) {
-                            if (destinationFile.exists()) {
-                                if (destinationFile.isDirectory()) {
-                                    LOGGER.log(Level.INFO,
-                                            "Directory \"{0}\" already exists",
-                                            destinationFile);
-                                } else {
-                                    throw new IOException("can not overwrite "
-                                            + "file \"" + destinationFile
-                                            + "\" with directory \""
-                                            + sourceFile + "\"");
-                                }
-                            } else {
-                                LOGGER.log(Level.INFO,
-                                        "Creating directory \"{0}\"",
-                                        destinationFile);
-                                if (!destinationFile.mkdirs()) {
-                                    throw new IOException(
-                                            "Could not create directory \""
-                                            + destinationFile + "\"");
-                                }
-                            }
-                        }
-                    } else {
-                        // create target files in parrallel
-                        if (copyJob.isZip()) {
-                            copyZIPFile(sourceFile, zos, destinationFiles);
-                        } else {
-                            copyFile(sourceFile, destinationFiles);
-                        }
+            ZipArchiveWriter zipWriter = null;
+            TarArchiveWriter tarWriter = null;
+            Closeable archiveWriter = null;
+            if (copyJob.isArchive()) {
+                deflater = new ParallelDeflater();
+                if (copyJob.getArchiveFormat() == CopyJob.ArchiveFormat.ZIP) {
+                    zipWriter = getZipWriter(copyJob);
+                    archiveWriter = zipWriter;
+                } else {
+                    tarWriter = getTarWriter(copyJob);
+                    archiveWriter = tarWriter;
+                }
+            }
+            CopyJournal jobJournal = null;
+            if ((copyJob.getJournal() != null) && !copyJob.isArchive()) {
+                jobJournal = new CopyJournal(
+                        copyJob.getJournal(), copyJob.getDestinations());
+                jobJournal.open();
+            }
+            journal = jobJournal;
+            // the journal may only record durable destinations
+            CopyJob.SyncPolicy syncPolicy = (jobJournal == null)
+                    ? copyJob.getSyncPolicy() : CopyJob.SyncPolicy.PER_FILE;
+            forceDestinations = syncPolicy == CopyJob.SyncPolicy.PER_FILE;
+            committer = new DestinationCommitter(syncPolicy,
+                    copyJob.getGroupCommitFiles(),
+                    copyJob.getGroupCommitBytes());
+            try {
+                executeCopyJob(copyJob, zipWriter, tarWriter);
+                if (archiveWriter != null) {
+                    // close() releases the archive even when it fails
+                    Closeable closingWriter = archiveWriter;
+                    archiveWriter = null;
+                    closeArchives(closingWriter);
+                }
+                committer.commit();
+            } catch (InterruptedIOException ex) {
+                if (removePartialDestinations) {
+                    // the destinations must be closed before removing them
+                    if (archiveWriter != null) {
+                        archiveWriter = null;
+                        abortArchives(zipWriter, tarWriter);
                     }
+                    removePartialDestinations();
+                }
+                throw ex;
+            } finally {
+                if (archiveWriter != null) {
+                    abortArchives(zipWriter, tarWriter);
+                }
+                // nothing is pending after a successful commit, after a
+                // failure the uncommitted temporary files must be removed
+                committer.discard();
+                stopZipCompression();
+                stopDeltaUpdates();
+                fileProgress = null;
+                journal = null;
+                committer = null;
+                if (jobJournal != null) {
+                    jobJournal.close();
                 }
             }
-            if (zos != null) {
-                zos.close();
+            if (jobJournal != null) {
+                // the copy job is complete, there is nothing left to resume
+                jobJournal.delete();
             }
         }
 
-        if (oldCopiedBytes != copiedBytes) {
-            // need to fire one last time...
-            // (last slice was not fully used)
-            propertyChangeSupport.firePropertyChange(
-                    BYTE_COUNTER_PROPERTY, oldCopiedBytes, copiedBytes);
+        if (!verificationTasks.isEmpty()) {
+            previousState = state;
+            state = State.VERIFYING;
+            firePropertyChange(
+                    STATE_PROPERTY, previousState, state);
+            verify();
         }
-        previousState = state;
-        state = State.END;
-        propertyChangeSupport.firePropertyChange(
-                STATE_PROPERTY, previousState, state);
-    }
 
-    private ZipOutputStream getZOS(DirectoryInfo directoryInfo, String[] destinations) throws IOException {
-        // ensure that all destination files exist before starting the transfer
-        // processing
-        File[] destinationFiles = getDestinationFiles(directoryInfo.getBaseDirectory(),
-                directoryInfo.getFiles().get(0), destinations);
-        for (File destination : destinationFiles) {
-            if (!destination.exists()) {
-                destination.getParentFile().mkdirs();
-                destination.createNewFile();
-            }
+        if (linkedBytes.get() > 0) {
+            LOGGER.log(Level.INFO, "{0} byte were linked instead of copied",
+                    NUMBER_FORMAT.format(linkedBytes.get()));
         }
-        return new ZipOutputStream(new FileOutputStream(destinationFiles[0]));
     }
 
-    private File[] getDestinationFiles(
-            File baseDirectory, File sourceFile, String[] destinations) {
+    private void executeCopyJob(CopyJob copyJob, ZipArchiveWriter zipWriter,
+            TarArchiveWriter tarWriter) throws IOException {
+        // remember where the first copy of every duplicate content went
+        Map<File, File> duplicates = copyJob.getDuplicates();
+        Set<File> originals = new HashSet<File>(duplicates.values());
+        Map<File, File[]> originalDestinations = new HashMap<File, File[]>();
+        for (DirectoryInfo directoryInfo : copyJob.getDirectoryInfos()) {
+            for (File sourceFile : directoryInfo.getFiles()) {
+                checkCancelled();
+                File[] destinationFiles = getDestinationFiles(
+                        directoryInfo.getBaseDirectory(),
+                        sourceFile, copyJob.getDestinations());
+                String entryName = copyJob.isArchive() ? getEntryName(
+                        directoryInfo.getBaseDirectory(), sourceFile) : null;
+                if (sourceFile.isDirectory() && copyJob.isArchive()) {
+                    if (zipWriter != null) {
+                        addZipDirectory(zipWriter, entryName, sourceFile);
+                    } else {
+                        tarWriter.putDirectory(
+                                entryName, sourceFile.lastModified());
+                    }
+                } else if (sourceFile.isDirectory()) {
+                    // make target directories (sequentially)
+                    for (File destinationFile : destinationFiles) {
+                        if (destinationFile.exists()) {
+                            if (destinationFile.isDirectory()) {
+                                LOGGER.log(Level.INFO,
+                                        "Directory \"{0}\" already exists",
+                                        destinationFile);
+                            } else {
+                                throw new IOException("can not overwrite "
+                                        + "file \"" + destinationFile
+                                        + "\" with directory \""
+                                        + sourceFile + "\"");
+                            }
+                        } else {
+                            LOGGER.log(Level.INFO,
+                                    "Creating directory \"{0}\"",
+                                    destinationFile);
+                            long startTime = System.nanoTime();
+                            boolean created = destinationFile.mkdirs();
+                            recordLatency(Stage.MKDIR, startTime);
+                            if (!created) {
+                                throw new IOException(
+                                        "Could not create directory \""
+                                        + destinationFile + "\"");
+                            }
+                        }
+                    }
+                } else {
+                    // create target files in parrallel
+                    if (zipWriter != null) {
+                        addZipEntry(copyJob, zipWriter, sourceFile, entryName);
+                    } else if (tarWriter != null) {
+                        addTarEntry(tarWriter, sourceFile, entryName);
+                    } else if ((journal != null)
+                            && journal.isCompleted(sourceFile)) {
+                        skipFile(sourceFile);
+                    } else {
+                        Map<File, File> links = getLinks(copyJob,
+                                directoryInfo.getBaseDirectory(), sourceFile,
+                                destinationFiles, originalDestinations.get(
+                                        duplicates.get(sourceFile)));
+                        copyFile(copyJob, sourceFile, links, destinationFiles);
+                        // copyFile() throws when a transfer failed, so only
+                        // successful copies are recorded as completed
+                        if (journal != null) {
+                            journal.completed(sourceFile);
+                        }
+                    }
+                    if (originals.contains(sourceFile)) {
+                        originalDestinations.put(sourceFile, destinationFiles);
+                    }
+                }
+                copiedFiles.incrementAndGet();
+            }
+        }
+        if (zipWriter != null) {
+            writeZipEntries(zipWriter, 0);
+        }
+        for (Map.Entry<File, List<ZipArchiveEntry>> zipEntries
+                : copyJob.getZipEntries().entrySet()) {
+            extractZipEntries(copyJob, zipEntries.getKey(),
+                    zipEntries.getValue());
+        }
+    }
+
+    private static String getEntryName(File baseDirectory, File source) {
+        // archive entries are named by their path relative to the base
+        // directory with "/" as separator, directory names end with "/"
+        String relativePath =
+                source.getPath().substring(baseDirectory.getPath().length());
+        if (relativePath.startsWith(File.separator)) {
+            relativePath = relativePath.substring(1);
+        }
+        String name = relativePath.replace(File.separatorChar, '/');
+        return source.isDirectory() ? name + '/' : name;
+    }
+
+    private List<ZipArchiveEntry> expandZipSource(File archive,
+            Pattern pattern) throws IOException {
+        LOGGER.log(Level.INFO, "\n\tzip archive: \"{0}\"\n\tpattern: \"{1}\"",
+                new Object[]{archive, pattern});
+
+        // feed the listeners
+        firePropertyChange(FILE_PROPERTY, null, archive);
+
+        List<ZipArchiveEntry> entries = new ArrayList<ZipArchiveEntry>();
+        if (!archive.isFile()) {
+            LOGGER.log(Level.WARNING, "{0} does not exist", archive);
+            return entries;
+        }
+        ZipArchiveReader zipReader = new ZipArchiveReader(archive);
+        try {
+            for (ZipArchiveEntry entry : zipReader.getEntries()) {
+                if (pattern.matcher(entry.getName()).matches()) {
+                    entries.add(entry);
+                }
+            }
+        } finally {
+            zipReader.close();
+        }
+        return entries;
+    }
+
+    private void extractZipEntries(CopyJob copyJob, File archive,
+            List<ZipArchiveEntry> entries) throws IOException {
+        LOGGER.log(Level.INFO, "Extracting \"{0}\"", archive);
+        // entries are extracted in parallel, the archive is read with
+        // positional reads that do not interfere with each other
+        ZipArchiveReader archiveReader = new ZipArchiveReader(archive);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CompletionService<ZipEntryExtractor> completionService =
+                new ExecutorCompletionService<ZipEntryExtractor>(
+                        executorService);
+        try {
+            Iterator<ZipArchiveEntry> iterator = entries.iterator();
+            int running = 0;
+            while (iterator.hasNext() || (running > 0)) {
+                checkCancelled();
+                // keep all workers busy without submitting all entries at once
+                while (iterator.hasNext() && (running < 2 * threads)) {
+                    ZipArchiveEntry entry = iterator.next();
+                    File[] targets = getEntryDestinations(
+                            archive, entry, copyJob.getDestinations());
+                    if (entry.getName().endsWith("/")) {
+                        for (File target : targets) {
+                            if (!target.isDirectory() && !target.mkdirs()) {
+                                throw new IOException(
+                                        "Could not create directory \""
+                                        + target + "\"");
+                            }
+                        }
+                        copiedFiles.incrementAndGet();
+                        continue;
+                    }
+                    ZipEntryExtractor extractor = new ZipEntryExtractor(
+                            archiveReader, entry, targets, copyJob.isAtomic());
+                    partialDestinations.addAll(
+                            Arrays.asList(extractor.getWrittenFiles()));
+                    completionService.submit(extractor);
+                    running++;
+                }
+                if (running == 0) {
+                    break;
+                }
+                Future<ZipEntryExtractor> future = completionService.poll(
+                        PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                if (future != null) {
+                    running--;
+                    copiedFiles.incrementAndGet();
+                    ZipEntryExtractor extractor = future.get();
+                    File[] writtenFiles = extractor.getWrittenFiles();
+                    File[] targets = extractor.getTargets();
+                    partialDestinations.removeAll(Arrays.asList(writtenFiles));
+                    for (int i = 0; i < writtenFiles.length; i++) {
+                        committer.add(writtenFiles[i],
+                                copyJob.isAtomic() ? targets[i] : null);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            cancel(removePartialDestinations);
+            throw new InterruptedIOException("extraction was interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(
+                    "could not extract \"" + archive + '"', cause);
+        } finally {
+            executorService.shutdownNow();
+            archiveReader.close();
+        }
+    }
+
+    private static File[] getEntryDestinations(File archive,
+            ZipArchiveEntry entry, String[] destinations) throws ZipException {
+        // entries must not escape from the destination directories
+        String name = entry.getName();
+        boolean windows = File.separatorChar == '\\';
+        if (name.startsWith("/") || ("/" + name + "/").contains("/../")
+                || (windows && (name.contains("\\") || name.contains(":")))) {
+            throw new ZipException("invalid name of entry \"" + name
+                    + "\" in \"" + archive + '"');
+        }
+        File[] destinationFiles = new File[destinations.length];
+        for (int i = 0; i < destinations.length; i++) {
+            destinationFiles[i] = new File(destinations[i],
+                    name.replace('/', File.separatorChar));
+        }
+        return destinationFiles;
+    }
+
+    private ZipArchiveWriter getZipWriter(CopyJob copyJob)
+            throws IOException {
+        archiveDestinations = getArchiveDestinations(copyJob);
+        File[] destinationFiles = archiveDestinations;
+        if (copyJob.isZipUpdate() && (archiveDestinations[0].length() > 0)) {
+            try {
+                zipReader = new ZipArchiveReader(archiveDestinations[0]);
+                // the existing archive is still read while the new one is
+                // written
+                destinationFiles = new File[archiveDestinations.length];
+                for (int i = 0; i < archiveDestinations.length; i++) {
+                    destinationFiles[i] = DestinationCommitter.getTemporaryFile(
+                            archiveDestinations[i]);
+                }
+            } catch (ZipException ex) {
+                LOGGER.log(Level.WARNING, "can not update \""
+                        + archiveDestinations[0] + "\", creating a new archive",
+                        ex);
+            }
+        }
+        FileChannel[] channels = openArchiveChannels(destinationFiles);
+        try {
+            return new ZipArchiveWriter(channels);
+        } catch (IOException ex) {
+            closeChannels(channels);
+            throw ex;
+        }
+    }
+
+    private TarArchiveWriter getTarWriter(CopyJob copyJob)
+            throws IOException {
+        archiveDestinations = getArchiveDestinations(copyJob);
+        FileChannel[] channels = openArchiveChannels(archiveDestinations);
+        try {
+            if (copyJob.getArchiveFormat() == CopyJob.ArchiveFormat.TAR) {
+                return new TarArchiveWriter(channels);
+            }
+            return new TarArchiveWriter(new ParallelGzipChannel(
+                    deflater, copyJob.getCompressionLevel(), channels));
+        } catch (IOException ex) {
+            closeChannels(channels);
+            throw ex;
+        }
+    }
+
+    private File[] getArchiveDestinations(CopyJob copyJob) {
+        DirectoryInfo directoryInfo = copyJob.getDirectoryInfos().get(0);
+        return getDestinationFiles(directoryInfo.getBaseDirectory(),
+                directoryInfo.getFiles().get(0), copyJob.getDestinations());
+    }
+
+    private FileChannel[] openArchiveChannels(File[] destinationFiles)
+            throws IOException {
+        // ensure that all destination files exist before starting the transfer
+        // processing
+        for (File destination : destinationFiles) {
+            if (!destination.exists()) {
+                destination.getParentFile().mkdirs();
+                destination.createNewFile();
+            }
+        }
+        partialDestinations.addAll(Arrays.asList(destinationFiles));
+
+        // the archive is created once and written to all destinations
+        FileChannel[] channels = new FileChannel[destinationFiles.length];
+        try {
+            for (int i = 0; i < destinationFiles.length; i++) {
+                channels[i] =
+                        new FileOutputStream(destinationFiles[i]).getChannel();
+            }
+            return channels;
+        } catch (IOException ex) {
+            closeChannels(channels);
+            throw ex;
+        }
+    }
+
+    private static void closeChannels(FileChannel[] channels)
+            throws IOException {
+        for (FileChannel channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    private static void abortArchives(
+            ZipArchiveWriter zipWriter, TarArchiveWriter tarWriter) {
+        try {
+            if (zipWriter != null) {
+                zipWriter.abort();
+            } else {
+                tarWriter.abort();
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "could not abort archive", ex);
+        }
+    }
+
+    private void closeArchives(Closeable archiveWriter) throws IOException {
+        archiveWriter.close();
+        if (zipReader != null) {
+            zipReader.close();
+            zipReader = null;
+            // replace the existing archives with the updated ones
+            for (File archiveDestination : archiveDestinations) {
+                committer.add(DestinationCommitter.getTemporaryFile(
+                        archiveDestination), archiveDestination);
+            }
+        } else {
+            for (File archiveDestination : archiveDestinations) {
+                committer.add(archiveDestination, null);
+            }
+        }
+        partialDestinations.clear();
+    }
+
+    private File[] getDestinationFiles(
+            File baseDirectory, File sourceFile, String[] destinations) {
         int destinationCount = destinations.length;
         File[] destinationFiles = new File[destinationCount];
         for (int i = 0; i < destinationCount; i++) {
@@ -393,7 +1420,7 @@ public class FileCopier {
         }
 
         // feed the listeners
-        propertyChangeSupport.firePropertyChange(
+        firePropertyChange(
                 FILE_PROPERTY, null, currentDirectory);
 
         if (!currentDirectory.exists()) {
@@ -418,6 +1445,10 @@ public class FileCopier {
         LOGGER.log(Level.FINE, "recursing directory {0}", currentDirectory);
         long tmpByteCount = 0;
         List<File> files = new ArrayList<File>();
+        // the scan latency of a directory does not include its subdirectories
+        Object scanEvent = COPY_EVENTS.beginScanDirectory();
+        long startTime = System.nanoTime();
+        long recursionTime = 0;
         for (File subFile : currentDirectory.listFiles()) {
 
             // check if subfile matches
@@ -441,20 +1472,47 @@ public class FileCopier {
             // recurse directories
             if (subFile.isDirectory()) {
                 if (recursive) {
+                    long recursionStartTime = System.nanoTime();
                     DirectoryInfo tmpInfo = expand(baseDirectoryPathLength,
                             subFile, pattern, recursive);
                     if (tmpInfo != null) {
                         files.addAll(tmpInfo.getFiles());
                         tmpByteCount += tmpInfo.getByteCount();
                     }
+                    recursionTime += System.nanoTime() - recursionStartTime;
                 }
             }
         }
+        recordLatency(Stage.SCAN, startTime + recursionTime);
+        COPY_EVENTS.endScanDirectory(
+                scanEvent, currentDirectory, files.size(), tmpByteCount);
         return new DirectoryInfo(currentDirectory, files, tmpByteCount);
     }
 
-    private void copyFile(File source, File... destinations)
-            throws IOException {
+    private void copyFile(CopyJob copyJob, File source, Map<File, File> links,
+            File... destinations) throws IOException {
+
+        // skip all destinations that are already up to date
+        destinations = getOutdatedDestinations(copyJob, source, destinations);
+        if (destinations.length == 0) {
+            skipFile(source);
+            return;
+        }
+
+        // unchanged files and duplicates are linked to existing files
+        if (links != null) {
+            for (File destination : destinations) {
+                File linkFile = copyJob.isAtomic()
+                        ? DestinationCommitter.getTemporaryFile(destination)
+                        : destination;
+                if (linkFile(links.get(destination), linkFile)) {
+                    linkedBytes.addAndGet(source.length());
+                }
+                committer.add(linkFile, copyJob.isAtomic() ? destination : null);
+            }
+            skipFile(source);
+            return;
+        }
 
         // some initial logging
         if (LOGGER.isLoggable(Level.INFO)) {
@@ -471,102 +1529,341 @@ public class FileCopier {
             LOGGER.info(stringBuilder.toString());
         }
 
-        // ensure that all destination files exist before starting the transfer
-        // processing
+        // existing destinations are updated block by block in delta mode
+        // (but never in atomic mode, where every file is written completely
+        // to a temporary file)
+        List<File> transferDestinations = new ArrayList<File>();
+        List<File> deltaDestinations = new ArrayList<File>();
         for (File destination : destinations) {
-            if (!destination.exists()) {
-                destination.getParentFile().mkdirs();
-                destination.createNewFile();
+            if (copyJob.isDeltaUpdate() && !copyJob.isAtomic()
+                    && destination.isFile() && (destination.length() > 0)) {
+                deltaDestinations.add(destination);
+            } else {
+                transferDestinations.add(destination);
             }
         }
+        if (!transferDestinations.isEmpty()) {
+            File[] targets = transferDestinations.toArray(
+                    new File[transferDestinations.size()]);
+            File[] writtenFiles = targets;
+            if (copyJob.isAtomic()) {
+                writtenFiles = new File[targets.length];
+                for (int i = 0; i < targets.length; i++) {
+                    writtenFiles[i] =
+                            DestinationCommitter.getTemporaryFile(targets[i]);
+                }
+            }
 
-        // quick return when source is an empty file
-        sourceLength = source.length();
-        if (sourceLength == 0) {
-            return;
+            // destinations on a file system that already got a copy are
+            // linked to this copy
+            int[] origins = getOrigins(copyJob, writtenFiles);
+            List<File> originFiles = new ArrayList<File>();
+            for (int i = 0; i < writtenFiles.length; i++) {
+                if (origins[i] == i) {
+                    originFiles.add(writtenFiles[i]);
+                }
+            }
+            byte[] sourceDigest;
+            try {
+                sourceDigest = transferFile(copyJob, source,
+                        originFiles.toArray(new File[originFiles.size()]));
+            } catch (IOException ex) {
+                if (copyJob.isAtomic()
+                        && !(ex instanceof InterruptedIOException)) {
+                    // incomplete temporary files must never be committed
+                    for (File originFile : originFiles) {
+                        if (originFile.exists() && !originFile.delete()) {
+                            LOGGER.log(Level.WARNING,
+                                    "could not remove \"{0}\"", originFile);
+                        }
+                    }
+                }
+                throw ex;
+            }
+            for (int i = 0; i < writtenFiles.length; i++) {
+                if ((origins[i] != i) && linkFile(
+                        writtenFiles[origins[i]], writtenFiles[i])) {
+                    linkedBytes.addAndGet(source.length());
+                }
+            }
+
+            switch (copyJob.getVerification()) {
+                case FULL:
+                    verificationTasks.add(
+                            new VerificationTask(source, targets, sourceDigest));
+                    break;
+                case SAMPLED:
+                    verificationTasks.add(new VerificationTask(source,
+                            targets, copyJob.getSampleCount(),
+                            copyJob.getSampleSize()));
+            }
+            copyModificationTime(copyJob, source, writtenFiles);
+            for (int i = 0; i < targets.length; i++) {
+                committer.add(writtenFiles[i],
+                        copyJob.isAtomic() ? targets[i] : null);
+            }
+        }
+        if (!deltaDestinations.isEmpty()) {
+            File[] targets = deltaDestinations.toArray(
+                    new File[deltaDestinations.size()]);
+            updateBlocks(copyJob, source, targets,
+                    transferDestinations.isEmpty());
+            copyModificationTime(copyJob, source, targets);
+            for (File target : targets) {
+                committer.add(target, null);
+            }
         }
+    }
 
-        // create a Transferrer thread for every destination
-        int destinationCount = destinations.length;
-        final Transferrer[] transferrers = new Transferrer[destinationCount];
-        for (int i = 0; i < destinationCount; i++) {
-            transferrers[i] = new Transferrer(
-                    new FileInputStream(source).getChannel(),
-                    new FileOutputStream(destinations[i]).getChannel());
+    private Map<File, File> getLinks(CopyJob copyJob, File baseDirectory,
+            File source, File[] destinations, File[] originalDestinations)
+            throws IOException {
+        File[] existingFiles = new File[destinations.length];
+        if (originalDestinations != null) {
+            // a duplicate is linked to the copies of its original, which are
+            // on the same destination file systems
+            for (int i = 0; i < destinations.length; i++) {
+                existingFiles[i] =
+                        committer.getWrittenFile(originalDestinations[i]);
+            }
+        } else {
+            File reference = getReferenceFile(copyJob, baseDirectory, source);
+            if (reference == null) {
+                return null;
+            }
+            Arrays.fill(existingFiles, reference);
         }
+        Map<File, File> links = new HashMap<File, File>();
+        for (int i = 0; i < destinations.length; i++) {
+            links.put(destinations[i], existingFiles[i]);
+        }
+        return links;
+    }
 
-        barrier = new CyclicBarrier(destinationCount, barrierAction);
+    private static Map<File, File> findDuplicates(
+            List<DirectoryInfo> directoryInfos) throws IOException {
+        // only files with the same size can have the same content
+        Map<Long, List<File>> filesPerSize =
+                new LinkedHashMap<Long, List<File>>();
+        for (DirectoryInfo directoryInfo : directoryInfos) {
+            for (File file : directoryInfo.getFiles()) {
+                long length = file.length();
+                if (file.isFile() && (length > 0)) {
+                    List<File> files = filesPerSize.get(length);
+                    if (files == null) {
+                        files = new ArrayList<File>();
+                        filesPerSize.put(length, files);
+                    }
+                    files.add(file);
+                }
+            }
+        }
 
-        // start the transfer process
-        position = 0;
-        transferVolume = Math.min(slice, sourceLength);
-        if (LOGGER.isLoggable(Level.FINEST)) {
-            LOGGER.log(Level.FINEST,
-                    "starting with slice = {0} byte, transferVolume = {1} byte",
-                    new Object[]{
-                        NUMBER_FORMAT.format(slice),
-                        NUMBER_FORMAT.format(transferVolume)
-                    });
+        Map<File, File> duplicates = new HashMap<File, File>();
+        for (List<File> files : filesPerSize.values()) {
+            if (files.size() < 2) {
+                continue;
+            }
+            Map<ByteBuffer, File> originals = new HashMap<ByteBuffer, File>();
+            for (File file : files) {
+                ByteBuffer digest = ByteBuffer.wrap(
+                        getFileDigest(file, DEDUPLICATION_ALGORITHM));
+                File original = originals.get(digest);
+                if (original == null) {
+                    originals.put(digest, file);
+                } else {
+                    LOGGER.log(Level.INFO, "\"{0}\" is a duplicate of \"{1}\"",
+                            new Object[]{file, original});
+                    duplicates.put(file, original);
+                }
+            }
         }
-        sliceStartTime = System.currentTimeMillis();
+        return duplicates;
+    }
 
-        ExecutorService executorService = Executors.newCachedThreadPool();
-        ExecutorCompletionService<Void> completionService =
-                new ExecutorCompletionService<Void>(executorService);
-        for (Transferrer transferrer : transferrers) {
-            completionService.submit(transferrer, null);
+    private static File getReferenceFile(CopyJob copyJob,
+            File baseDirectory, File source) throws IOException {
+        byte[] sourceDigest = null;
+        String relativePath =
+                source.getPath().substring(baseDirectory.getPath().length());
+        for (String referenceDirectory : copyJob.getReferenceDirectories()) {
+            File reference = new File(referenceDirectory, relativePath);
+            if (!reference.isFile()
+                    || (reference.length() != source.length())) {
+                continue;
+            }
+            switch (copyJob.getReferenceComparison()) {
+                case SIZE_AND_MTIME:
+                    if (reference.lastModified() == source.lastModified()) {
+                        return reference;
+                    }
+                    break;
+                case CHECKSUM:
+                    if (sourceDigest == null) {
+                        sourceDigest = getFileDigest(source);
+                    }
+                    if (MessageDigest.isEqual(
+                            sourceDigest, getFileDigest(reference))) {
+                        return reference;
+                    }
+            }
         }
+        return null;
+    }
 
-        // wait until all transferrers completed their execution
-        for (int i = 0; i < destinationCount; i++) {
+    private static int[] getOrigins(CopyJob copyJob, File[] destinations) {
+        int[] origins = new int[destinations.length];
+        Map<FileStore, Integer> firstDestinations =
+                new HashMap<FileStore, Integer>();
+        for (int i = 0; i < destinations.length; i++) {
+            origins[i] = i;
+            if (copyJob.getLinkMode() == CopyJob.LinkMode.NONE) {
+                continue;
+            }
+            FileStore fileStore = getFileStore(destinations[i]);
+            if (fileStore != null) {
+                Integer firstDestination = firstDestinations.get(fileStore);
+                if (firstDestination == null) {
+                    firstDestinations.put(fileStore, i);
+                } else {
+                    origins[i] = firstDestination;
+                }
+            }
+        }
+        return origins;
+    }
+
+    private static FileStore getFileStore(File file) {
+        // destination files and even their directories may not exist yet
+        File existingFile = file.getAbsoluteFile();
+        while ((existingFile != null) && !existingFile.exists()) {
+            existingFile = existingFile.getParentFile();
+        }
+        if (existingFile != null) {
             try {
-                completionService.take();
-            } catch (InterruptedException ex) {
-                LOGGER.log(Level.SEVERE, null, ex);
+                return Files.getFileStore(existingFile.toPath());
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING,
+                        "could not determine file store of " + file, ex);
             }
         }
-        executorService.shutdown();
+        return null;
     }
 
-    private void copyZIPFile(File source, ZipOutputStream zos, File... destinations)
+    private static boolean linkFile(File existing, File link)
             throws IOException {
+        link.getParentFile().mkdirs();
+        LOGGER.log(Level.INFO, "Linking \"{0}\" to \"{1}\"",
+                new Object[]{link, existing});
+        Files.deleteIfExists(link.toPath());
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+            return true;
+        } catch (UnsupportedOperationException ex) {
+            LOGGER.log(Level.WARNING, "hard links are not supported", ex);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "could not create hard link", ex);
+        }
+        LOGGER.log(Level.INFO, "Copying \"{0}\" to \"{1}\"",
+                new Object[]{existing, link});
+        Files.copy(existing.toPath(), link.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return false;
+    }
 
-        // some initial logging
-        if (LOGGER.isLoggable(Level.INFO)) {
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("Copying file \"");
-            stringBuilder.append(source.toString());
-            stringBuilder.append("\" to the following destinations:\n");
-            for (int i = 0, length = 1; i < length; i++) {
-                stringBuilder.append(destinations[i].getPath());
-                if (i != length - 1) {
-                    stringBuilder.append('\n');
-                }
+    private void skipFile(File source) {
+        LOGGER.log(Level.INFO, "Skipping file \"{0}\"", source);
+        addCopiedBytes(source.length());
+    }
+
+    private byte[] transferFile(CopyJob copyJob, File source,
+            File... destinations) throws IOException {
+        Object fileCopyEvent = COPY_EVENTS.beginFileCopy();
+
+        // ensure that all destination files exist before starting the transfer
+        // processing
+        for (File destination : destinations) {
+            if (!destination.exists()) {
+                long startTime = System.nanoTime();
+                destination.getParentFile().mkdirs();
+                recordLatency(Stage.MKDIR, startTime);
+                startTime = System.nanoTime();
+                destination.createNewFile();
+                recordLatency(Stage.OPEN, startTime);
             }
-            LOGGER.info(stringBuilder.toString());
         }
 
+        boolean verify =
+                copyJob.getVerification() == CopyJob.Verification.FULL;
+        partialDestinations.addAll(Arrays.asList(destinations));
+
         // quick return when source is an empty file
         sourceLength = source.length();
         if (sourceLength == 0) {
-            return;
+            partialDestinations.clear();
+            COPY_EVENTS.endFileCopy(fileCopyEvent, source, 0,
+                    destinations.length);
+            return verify ? getDigest().digest() : null;
+        }
+
+        // check, if an interrupted copy of this file can be resumed
+        long startPosition = 0;
+        if (journal != null) {
+            startPosition = journal.getResumePosition(source);
+            for (File destination : destinations) {
+                if (destination.length() < startPosition) {
+                    startPosition = 0;
+                }
+            }
+            if (startPosition > 0) {
+                LOGGER.log(Level.INFO, "Resuming \"{0}\" at position {1}",
+                        new Object[]{source, startPosition});
+                addCopiedBytes(startPosition);
+            }
         }
 
-     // create a Transferrer thread for every destination
+        // create a Transferrer thread for every destination
         int destinationCount = destinations.length;
-        final ZIPTransferrer[] transferrers = new ZIPTransferrer[destinationCount];
+        final Transferrer[] transferrers = new Transferrer[destinationCount];
+        FileProgress currentProgress = new FileProgress(
+                source, sourceLength, destinations, startPosition);
+        currentSource = source;
+        destinationChannels = new FileChannel[destinationCount];
         for (int i = 0; i < destinationCount; i++) {
-            transferrers[i] = new ZIPTransferrer(
-                    source,
-                    zos);
+            long startTime = System.nanoTime();
+            FileChannel sourceChannel = new FileInputStream(source).getChannel();
+            if (startPosition > 0) {
+                // keep what was already copied
+                sourceChannel.position(startPosition);
+                destinationChannels[i] = new RandomAccessFile(
+                        destinations[i], "rw").getChannel();
+            } else {
+                destinationChannels[i] =
+                        new FileOutputStream(destinations[i]).getChannel();
+            }
+            recordLatency(Stage.OPEN, startTime);
+            transferrers[i] =
+                    new Transferrer(sourceChannel, destinationChannels[i],
+                    currentProgress, i);
+        }
+
+        // the source digest is computed by an additional party at the barrier
+        // so that it reads every slice while it is still in the page cache
+        int parties = destinationCount;
+        Digester digester = null;
+        if (verify) {
+            digester = new Digester(
+                    new FileInputStream(source).getChannel(), startPosition);
+            parties++;
         }
 
-        barrier = new CyclicBarrier(destinationCount, barrierAction);
+        barrier = new CyclicBarrier(parties, barrierAction);
 
         // start the transfer process
-        position = 0;
-        slice = bufferSlice;
-        transferVolume = Math.min(slice, sourceLength);
+        stopTransfer = false;
+        transferFailed = false;
+        position = startPosition;
+        transferVolume = Math.min(slice, sourceLength - position);
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.log(Level.FINEST,
                     "starting with slice = {0} byte, transferVolume = {1} byte",
@@ -576,44 +1873,672 @@ public class FileCopier {
                     });
         }
         sliceStartTime = System.currentTimeMillis();
+        sliceEvent = COPY_EVENTS.beginSlice();
+        fileProgress = currentProgress;
 
         ExecutorService executorService = Executors.newCachedThreadPool();
         ExecutorCompletionService<Void> completionService =
                 new ExecutorCompletionService<Void>(executorService);
-        for (ZIPTransferrer transferrer : transferrers) {
+        for (Transferrer transferrer : transferrers) {
             completionService.submit(transferrer, null);
         }
+        if (digester != null) {
+            completionService.submit(digester, null);
+        }
 
         // wait until all transferrers completed their execution
-        for (int i = 0; i < destinationCount; i++) {
-            try {
-                completionService.take();
-            } catch (InterruptedException ex) {
-                LOGGER.log(Level.SEVERE, null, ex);
+        waitForCompletion(completionService, parties);
+        executorService.shutdown();
+        fileProgress = null;
+        checkCancelled();
+        partialDestinations.clear();
+        IOException failure = (digester == null) ? null : digester.getFailure();
+        for (Transferrer transferrer : transferrers) {
+            if (transferrer.getFailure() != null) {
+                failure = transferrer.getFailure();
             }
         }
-        executorService.shutdown();
-    }
+        if (failure != null) {
+            failedCopies.incrementAndGet();
+            throw new IOException("could not copy \"" + source + '"', failure);
+        }
+        COPY_EVENTS.endFileCopy(fileCopyEvent, source, sourceLength,
+                destinations.length);
 
+        return (digester == null) ? null : digester.getSourceDigest();
+    }
 
-    private class BarrierAction implements Runnable {
+    private void updateBlocks(CopyJob copyJob, File source,
+            File[] destinations, boolean countProgress) throws IOException {
+        int blockSize = copyJob.getDeltaBlockSize();
+        RandomAccessFile sourceFile = new RandomAccessFile(source, "r");
+        RandomAccessFile[] destinationFiles =
+                new RandomAccessFile[destinations.length];
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (deltaExecutor == null) {
+            deltaExecutor = Executors.newFixedThreadPool(threads);
+        }
+        partialDestinations.addAll(Arrays.asList(destinations));
+        try {
+            FileChannel sourceChannel = sourceFile.getChannel();
+            FileChannel[] deltaChannels = new FileChannel[destinations.length];
+            for (int i = 0; i < destinations.length; i++) {
+                destinationFiles[i] = new RandomAccessFile(destinations[i], "rw");
+                deltaChannels[i] = destinationFiles[i].getChannel();
+            }
 
-        @Override
-        public void run() {
-            // inform property listeners about copied data volume
-            position += transferVolume;
-            if (LOGGER.isLoggable(Level.FINEST)) {
-                LOGGER.log(Level.FINEST,
-                        "new position: {0}", NUMBER_FORMAT.format(position));
+            // compare all blocks in parallel, but only keep a few blocks in
+            // flight so that memory usage stays bounded
+            long length = sourceChannel.size();
+            long blocks = (length + blockSize - 1) / blockSize;
+            ExecutorCompletionService<BlockUpdate> completionService =
+                    new ExecutorCompletionService<BlockUpdate>(deltaExecutor);
+            long submitted = 0;
+            long completed = 0;
+            while (completed < blocks) {
+                checkCancelled();
+                while ((submitted < blocks)
+                        && (submitted - completed < 2 * threads)) {
+                    completionService.submit(new BlockUpdater(sourceChannel,
+                            deltaChannels, submitted * blockSize,
+                            blockSize, deltaBuffers));
+                    submitted++;
+                }
+                BlockUpdate blockUpdate;
+                try {
+                    blockUpdate = completionService.take().get();
+                } catch (InterruptedException ex) {
+                    cancel(removePartialDestinations);
+                    throw new InterruptedIOException(
+                            "delta update was interrupted");
+                } catch (ExecutionException ex) {
+                    throw new IOException("could not update \""
+                            + source + "\"", ex.getCause());
+                }
+                completed++;
+
+                // inform property listeners about the compared and written
+                // data volume
+                long comparedBlock = blockUpdate.getComparedBytes();
+                long newComparedBytes =
+                        deltaComparedBytes.addAndGet(comparedBlock);
+                firePropertyChange(
+                        DELTA_COMPARED_PROPERTY,
+                        newComparedBytes - comparedBlock, newComparedBytes);
+                long writtenBlock = blockUpdate.getWrittenBytes();
+                if (writtenBlock > 0) {
+                    long newWrittenBytes =
+                            deltaWrittenBytes.addAndGet(writtenBlock);
+                    firePropertyChange(
+                            DELTA_WRITTEN_PROPERTY,
+                            newWrittenBytes - writtenBlock, newWrittenBytes);
+                }
+                if (countProgress) {
+                    addCopiedBytes(comparedBlock);
+                }
             }
-            copiedBytes += transferVolume;
-            propertyChangeSupport.firePropertyChange(
-                    BYTE_COUNTER_PROPERTY, oldCopiedBytes, copiedBytes);
-            oldCopiedBytes = copiedBytes;
 
-            // update slice/transferVolume
-            long stop = System.currentTimeMillis();
-            long time = stop - sliceStartTime;
+            // cut off everything behind the end of the source
+            for (FileChannel destinationChannel : deltaChannels) {
+                if (destinationChannel.size() > length) {
+                    destinationChannel.truncate(length);
+                }
+                if (forceDestinations) {
+                    destinationChannel.force(false);
+                }
+            }
+            partialDestinations.clear();
+        } finally {
+            sourceFile.close();
+            for (RandomAccessFile destinationFile : destinationFiles) {
+                if (destinationFile != null) {
+                    destinationFile.close();
+                }
+            }
+        }
+
+        switch (copyJob.getVerification()) {
+            case FULL:
+                // blocks were compared out of order, so the source digest
+                // must be computed separately
+                verificationTasks.add(new VerificationTask(
+                        source, destinations, getFileDigest(source)));
+                break;
+            case SAMPLED:
+                verificationTasks.add(new VerificationTask(source,
+                        destinations, copyJob.getSampleCount(),
+                        copyJob.getSampleSize()));
+        }
+    }
+
+    private File[] getOutdatedDestinations(CopyJob copyJob, File source,
+            File[] destinations) throws IOException {
+        CopyJob.OverwritePolicy overwritePolicy = copyJob.getOverwritePolicy();
+        if (overwritePolicy == CopyJob.OverwritePolicy.ALWAYS) {
+            return destinations;
+        }
+        List<File> outdatedDestinations = new ArrayList<File>();
+        byte[] sourceDigest = null;
+        for (File destination : destinations) {
+            boolean upToDate = false;
+            // the cheap checks run before any file is opened
+            if (destination.isFile()) {
+                switch (overwritePolicy) {
+                    case NEVER:
+                        upToDate = true;
+                        break;
+                    case SKIP_SAME_SIZE_AND_MTIME:
+                        upToDate = (destination.length() == source.length())
+                                && (destination.lastModified()
+                                == source.lastModified());
+                        break;
+                    case SKIP_SAME_CHECKSUM:
+                        if (destination.length() == source.length()) {
+                            if (sourceDigest == null) {
+                                sourceDigest = getFileDigest(source);
+                            }
+                            upToDate = MessageDigest.isEqual(
+                                    sourceDigest, getFileDigest(destination));
+                        }
+                }
+            }
+            if (upToDate) {
+                LOGGER.log(Level.INFO,
+                        "\"{0}\" is up to date", destination);
+            } else {
+                outdatedDestinations.add(destination);
+            }
+        }
+        return outdatedDestinations.toArray(
+                new File[outdatedDestinations.size()]);
+    }
+
+    private void copyModificationTime(
+            CopyJob copyJob, File source, File[] destinations) {
+        if (copyJob.getOverwritePolicy()
+                != CopyJob.OverwritePolicy.SKIP_SAME_SIZE_AND_MTIME) {
+            return;
+        }
+        long lastModified = source.lastModified();
+        for (File destination : destinations) {
+            if (!destination.setLastModified(lastModified)) {
+                LOGGER.log(Level.WARNING, "could not set modification time "
+                        + "of \"{0}\"", destination);
+            }
+        }
+    }
+
+    private static byte[] getFileDigest(File file) throws IOException {
+        return getFileDigest(file, DIGEST_ALGORITHM);
+    }
+
+    private static byte[] getFileDigest(File file, String algorithm)
+            throws IOException {
+        MessageDigest digest = getDigest(algorithm);
+        byte[] buffer = new byte[VERIFY_BUFFER_SIZE];
+        FileInputStream fileInputStream = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = fileInputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            fileInputStream.close();
+        }
+        return digest.digest();
+    }
+
+    private void verify() throws IOException {
+        // group all destinations by their file store so that every device is
+        // read back sequentially while different devices run in parallel
+        Map<FileStore, List<VerificationItem>> itemsPerStore =
+                new LinkedHashMap<FileStore, List<VerificationItem>>();
+        for (VerificationTask task : verificationTasks) {
+            for (File destination : task.getDestinations()) {
+                FileStore fileStore = null;
+                try {
+                    fileStore = Files.getFileStore(destination.toPath());
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING,
+                            "could not determine file store of " + destination,
+                            ex);
+                }
+                List<VerificationItem> items = itemsPerStore.get(fileStore);
+                if (items == null) {
+                    items = new ArrayList<VerificationItem>();
+                    itemsPerStore.put(fileStore, items);
+                }
+                items.add(new VerificationItem(task, destination));
+                verifyByteCount += task.getCompareLength();
+            }
+        }
+
+        ExecutorService executorService =
+                Executors.newFixedThreadPool(itemsPerStore.size());
+        List<Future<List<String>>> futures =
+                new ArrayList<Future<List<String>>>();
+        for (List<VerificationItem> items : itemsPerStore.values()) {
+            futures.add(executorService.submit(
+                    new DestinationVerifier(items)));
+        }
+        List<String> failures = new ArrayList<String>();
+        try {
+            for (Future<List<String>> future : futures) {
+                failures.addAll(future.get());
+            }
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException("verification was interrupted");
+        } catch (ExecutionException ex) {
+            throw new IOException("verification failed", ex.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+        checkCancelled();
+
+        LOGGER.info(verificationReport.toString());
+        if (!failures.isEmpty()) {
+            StringBuilder errorMessage =
+                    new StringBuilder("verification failed");
+            for (String failure : failures) {
+                errorMessage.append("\n ");
+                errorMessage.append(failure);
+            }
+            throw new IOException(errorMessage.toString());
+        }
+    }
+
+    private static MessageDigest getDigest() {
+        return getDigest(DIGEST_ALGORITHM);
+    }
+
+    private static MessageDigest getDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform must support MD5 and SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void addZipDirectory(ZipArchiveWriter zipWriter, String name,
+            File directory) throws IOException {
+        LOGGER.log(Level.INFO, "Adding directory \"{0}\"", directory);
+        pendingEntries.add(new PendingEntry(name, directory.lastModified()));
+        writeZipEntries(zipWriter, 2 * deflater.getThreads());
+    }
+
+    private void addZipEntry(CopyJob copyJob, ZipArchiveWriter zipWriter,
+            File source, String name) throws IOException {
+        if (zipReader != null) {
+            ZipArchiveEntry existingEntry = zipReader.getEntry(name);
+            if ((existingEntry != null)
+                    && (existingEntry.getSize() == source.length())
+                    && (ZipArchiveEntry.toDosTime(existingEntry.getTime())
+                    == ZipArchiveEntry.toDosTime(source.lastModified()))) {
+                LOGGER.log(Level.INFO, "Keeping unchanged file \"{0}\"",
+                        source);
+                pendingEntries.add(
+                        new PendingEntry(name, source, existingEntry));
+                writeZipEntries(zipWriter, 2 * deflater.getThreads());
+                return;
+            }
+        }
+        int method = getCompressionMethod(copyJob, source);
+        LOGGER.log(Level.INFO, "{0} file \"{1}\"", new Object[]{
+                    (method == ZipArchiveEntry.STORED)
+                    ? "Storing" : "Compressing", source});
+        PendingEntry entry = new PendingEntry(name, source, method);
+        pendingEntries.add(entry);
+
+        // files are split into chunks that are compressed in parallel
+        long length = source.length();
+        long chunkPosition = 0;
+        do {
+            // bound the memory used by compressed chunks
+            writeZipEntries(zipWriter, 2 * deflater.getThreads());
+            int chunkLength = (int) Math.min(
+                    ParallelDeflater.CHUNK_SIZE, length - chunkPosition);
+            if (method == ZipArchiveEntry.STORED) {
+                entry.addChunk(deflater.submitStored(
+                        source, chunkPosition, chunkLength));
+            } else {
+                entry.addChunk(deflater.submit(source, chunkPosition,
+                        chunkLength, chunkPosition + chunkLength == length,
+                        copyJob.getCompressionLevel()));
+            }
+            chunksInFlight++;
+            chunkPosition += chunkLength;
+        } while (chunkPosition < length);
+        entry.setComplete();
+    }
+
+    private void addTarEntry(TarArchiveWriter tarWriter, File source,
+            String name) throws IOException {
+        LOGGER.log(Level.INFO, "Archiving file \"{0}\"", source);
+        long size = source.length();
+        FileChannel sourceChannel = new FileInputStream(source).getChannel();
+        try {
+            tarWriter.putEntry(name, size, source.lastModified(),
+                    source.canExecute());
+            // file bodies are transferred without copying them through the
+            // Java heap
+            for (long position = 0; position < size;
+                    position += ARCHIVE_SLICE_SIZE) {
+                checkCancelled();
+                long count = Math.min(ARCHIVE_SLICE_SIZE, size - position);
+                tarWriter.transferFrom(sourceChannel, position, count);
+                addCopiedBytes(count);
+                throttle(count);
+            }
+            tarWriter.closeEntry();
+        } finally {
+            sourceChannel.close();
+        }
+    }
+
+    private static int getCompressionMethod(CopyJob copyJob, File source)
+            throws IOException {
+        if (copyJob.getCompressionLevel() == Deflater.NO_COMPRESSION) {
+            return ZipArchiveEntry.STORED;
+        }
+        // files that are already compressed are recognized by their
+        // extension or by probing their first block
+        String name = source.getName();
+        int dotIndex = name.lastIndexOf('.');
+        if (dotIndex != -1) {
+            String extension = name.substring(dotIndex + 1);
+            for (String storedExtension : copyJob.getStoredExtensions()) {
+                if (extension.equalsIgnoreCase(storedExtension)) {
+                    return ZipArchiveEntry.STORED;
+                }
+            }
+        }
+        return ParallelDeflater.isCompressible(source)
+                ? ZipArchiveEntry.DEFLATED : ZipArchiveEntry.STORED;
+    }
+
+    private void writeZipEntries(ZipArchiveWriter zipWriter, int maxChunks)
+            throws IOException {
+        // entries are written in their original order as soon as all their
+        // chunks are compressed
+        while (true) {
+            while (!pendingEntries.isEmpty()
+                    && pendingEntries.getFirst().isWritable()) {
+                pendingEntries.getFirst().write(zipWriter);
+                pendingEntries.removeFirst();
+            }
+            if (chunksInFlight <= maxChunks) {
+                return;
+            }
+            checkCancelled();
+            ParallelDeflater.Chunk chunk = pendingEntries.getFirst().takeChunk();
+            chunksInFlight--;
+            addCopiedBytes(chunk.getLength());
+            throttle(chunk.getLength());
+        }
+    }
+
+    private void addCopiedBytes(long count) {
+        // listeners and the estimator are updated by the progress sampler
+        copiedBytes.addAndGet(count);
+    }
+
+    private void recordLatency(Stage stage, long startTime) {
+        latencyHistograms.get(stage).record(System.nanoTime() - startTime);
+    }
+
+    private static Map<Stage, LatencyHistogram> createLatencyHistograms() {
+        Map<Stage, LatencyHistogram> histograms =
+                new EnumMap<Stage, LatencyHistogram>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        return histograms;
+    }
+
+    private void startSampling() {
+        stopSampling();
+        progressSampler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(
+                                runnable, "FileCopier progress sampler");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        progressSampler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    sampleProgress();
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.WARNING, "could not sample progress", ex);
+                }
+            }
+        }, PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopSampling() {
+        if (progressSampler == null) {
+            return;
+        }
+        progressSampler.shutdown();
+        try {
+            progressSampler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.WARNING,
+                    "interrupted while stopping the progress sampler", ex);
+            Thread.currentThread().interrupt();
+        }
+        progressSampler = null;
+        // the final values
+        sampleProgress();
+    }
+
+    private void sampleProgress() {
+        long bytes = copiedBytes.get();
+        throughputEstimator.update(System.nanoTime(), bytes, copiedFiles.get());
+        long previousBytes = sampledBytes;
+        sampledBytes = bytes;
+        fireByteCounter(previousBytes, bytes);
+    }
+
+    private void fireByteCounter(long oldValue, long newValue) {
+        // avoid boxing the values when nobody listens
+        if ((oldValue != newValue)
+                && propertyChangeSupport.hasListeners(BYTE_COUNTER_PROPERTY)) {
+            firePropertyChange(
+                    BYTE_COUNTER_PROPERTY, oldValue, newValue);
+        }
+    }
+
+    private void firePropertyChange(
+            String property, Object oldValue, Object newValue) {
+        EventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher == null) {
+            propertyChangeSupport.firePropertyChange(
+                    property, oldValue, newValue);
+        } else {
+            dispatcher.fire(
+                    new PropertyChangeEvent(this, property, oldValue, newValue));
+        }
+    }
+
+    private void flushEvents() {
+        EventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher != null) {
+            try {
+                dispatcher.flush();
+            } catch (InterruptedException ex) {
+                // keep the interrupt for the caller of copy()
+                LOGGER.log(Level.WARNING,
+                        "interrupted while delivering events", ex);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void stopDeltaUpdates() {
+        if (deltaExecutor != null) {
+            deltaExecutor.shutdown();
+            deltaExecutor = null;
+        }
+        deltaBuffers.clear();
+    }
+
+    private void stopZipCompression() {
+        if (deflater != null) {
+            deflater.shutdown();
+            deflater = null;
+        }
+        for (PendingEntry pendingEntry : pendingEntries) {
+            pendingEntry.discard();
+        }
+        pendingEntries.clear();
+        chunksInFlight = 0;
+        if (zipReader != null) {
+            try {
+                zipReader.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, null, ex);
+            }
+            zipReader = null;
+        }
+    }
+
+    private void waitForCompletion(
+            CompletionService<Void> completionService, int count) {
+        boolean interrupted = false;
+        for (int i = 0; i < count;) {
+            try {
+                completionService.take();
+                i++;
+            } catch (InterruptedException ex) {
+                // an interrupted copy is cancelled, but we must still wait
+                // until all parties left the barrier
+                cancel(removePartialDestinations);
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void throttle(long count) throws InterruptedIOException {
+        if (maxBandwidth == 0) {
+            return;
+        }
+        synchronized (pauseLock) {
+            long limit = maxBandwidth;
+            if (limit == 0) {
+                return;
+            }
+            // wait until the transferred data volume fits the limit, cancel
+            // and changes of the limit wake us up
+            throttleBytes += count;
+            long now = System.nanoTime();
+            long dueTime = throttleStartTime
+                    + (long) (throttleBytes * 1e9 / limit);
+            if (now - dueTime > TimeUnit.SECONDS.toNanos(1)) {
+                // we were idle, do not make up for it with a burst
+                throttleStartTime = now;
+                throttleBytes = 0;
+                return;
+            }
+            while (!cancelled && (maxBandwidth == limit)
+                    && (dueTime - now > 0)) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(pauseLock, dueTime - now);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "throttling was interrupted");
+                }
+                now = System.nanoTime();
+            }
+        }
+    }
+
+    private void waitWhilePaused() {
+        synchronized (pauseLock) {
+            while (paused && !cancelled) {
+                try {
+                    pauseLock.wait();
+                } catch (InterruptedException ex) {
+                    cancel(removePartialDestinations);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        waitWhilePaused();
+        if (cancelled) {
+            throw new InterruptedIOException("copy was cancelled");
+        }
+    }
+
+    private void removePartialDestinations() {
+        for (File partialDestination : partialDestinations) {
+            LOGGER.log(Level.INFO, "Removing partial destination \"{0}\"",
+                    partialDestination);
+            if (partialDestination.exists()
+                    && !partialDestination.delete()) {
+                LOGGER.log(Level.WARNING, "could not remove \"{0}\"",
+                        partialDestination);
+            }
+        }
+        partialDestinations.clear();
+        committer.discard();
+    }
+
+    private class BarrierAction implements Runnable {
+
+        @Override
+        public void run() {
+            if (transferFailed) {
+                // the slice is incomplete, it must neither be counted nor
+                // recorded in the journal
+                stopTransfer = true;
+                return;
+            }
+
+            // inform property listeners about copied data volume
+            long finishedVolume = transferVolume;
+            position += transferVolume;
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.log(Level.FINEST,
+                        "new position: {0}", NUMBER_FORMAT.format(position));
+            }
+            addCopiedBytes(transferVolume);
+            try {
+                throttle(transferVolume);
+            } catch (InterruptedIOException ex) {
+                LOGGER.log(Level.WARNING, null, ex);
+                cancelled = true;
+            }
+
+            // periodically record the progress within the current file
+            if ((journal != null) && journal.isProgressDue()) {
+                try {
+                    for (FileChannel destinationChannel : destinationChannels) {
+                        destinationChannel.force(false);
+                    }
+                    journal.progress(currentSource, position);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "could not record progress", ex);
+                }
+            }
+
+            // update slice/transferVolume
+            long stop = System.currentTimeMillis();
+            long time = stop - sliceStartTime;
             if (LOGGER.isLoggable(Level.FINEST)) {
                 LOGGER.log(Level.FINEST, "time = {0} ms",
                         NUMBER_FORMAT.format(time));
@@ -646,7 +2571,13 @@ public class FileCopier {
                             NUMBER_FORMAT.format(transferVolume));
                 }
             }
+            COPY_EVENTS.endSlice(sliceEvent, finishedVolume, slice);
+
+            // all other parties wait at the barrier while we are paused
+            waitWhilePaused();
+            stopTransfer = cancelled;
             sliceStartTime = System.currentTimeMillis();
+            sliceEvent = COPY_EVENTS.beginSlice();
         }
     }
 
@@ -654,47 +2585,61 @@ public class FileCopier {
 
         private final FileChannel sourceChannel;
         private final FileChannel destinationChannel;
+        private final FileProgress progress;
+        private final int destinationIndex;
+        private IOException failure;
 
-        public Transferrer(
-                FileChannel sourceChannel, FileChannel destinationChannel) {
+        public Transferrer(FileChannel sourceChannel,
+                FileChannel destinationChannel, FileProgress progress,
+                int destinationIndex) {
             this.sourceChannel = sourceChannel;
             this.destinationChannel = destinationChannel;
+            this.progress = progress;
+            this.destinationIndex = destinationIndex;
+        }
+
+        /**
+         * returns the exception that stopped the transfer
+         *
+         * @return the exception that stopped the transfer or <tt>null</tt>,
+         * if the transfer succeeded
+         */
+        public IOException getFailure() {
+            return failure;
         }
 
         @Override
         public void run() {
             try {
-                while (position < sourceLength) {
-                    // transfer the currently planned volume
-                    long transferred = 0;
-                    while (transferred < transferVolume) {
-                        long count = transferVolume - transferred;
-                        if (LOGGER.isLoggable(Level.FINEST)) {
-                            LOGGER.log(Level.FINEST, "already transferred = "
-                                    + "{0} byte, to be transferred = {1} byte",
-                                    new Object[]{
-                                        NUMBER_FORMAT.format(transferred),
-                                        NUMBER_FORMAT.format(count)
-                                    });
-                        }
-                        long tmpTransferred = destinationChannel.transferFrom(
-                                sourceChannel, position, count);
-                        if (LOGGER.isLoggable(Level.FINEST)) {
-                            LOGGER.log(Level.FINEST, "{0} byte transferred",
-                                    NUMBER_FORMAT.format(tmpTransferred));
-                        }
-                        transferred += tmpTransferred;
+                while ((position < sourceLength) && !stopTransfer) {
+                    // a failed party still waits at the barrier so that all
+                    // parties stop together
+                    try {
+                        transferSlice();
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.SEVERE, "could not transfer data", ex);
+                        failure = ex;
+                        transferFailed = true;
                     }
                     // wait for all other Transferrers to finish their slice
+                    Object barrierWaitEvent = COPY_EVENTS.beginBarrierWait();
                     barrier.await();
+                    COPY_EVENTS.endBarrierWait(barrierWaitEvent,
+                            progress.getDestinations()[destinationIndex]);
+                }
+                if (forceDestinations && (failure == null)) {
+                    destinationChannel.force(false);
                 }
             } catch (IOException ex) {
-                LOGGER.log(Level.SEVERE, "could not transfer data", ex);
+                LOGGER.log(Level.SEVERE, "could not force destination", ex);
+                failure = ex;
             } catch (InterruptedException ex) {
-                LOGGER.log(Level.SEVERE, null, ex);
+                // an interrupted transfer cancels the copy operation
+                cancel(removePartialDestinations);
             } catch (BrokenBarrierException ex) {
                 LOGGER.log(Level.SEVERE, null, ex);
             } finally {
+                long startTime = System.nanoTime();
                 try {
                     sourceChannel.close();
                 } catch (IOException ex) {
@@ -707,69 +2652,878 @@ public class FileCopier {
                     LOGGER.log(Level.SEVERE,
                             "could not close destination channel", ex);
                 }
+                recordLatency(Stage.CLOSE, startTime);
+            }
+        }
+
+        private void transferSlice() throws IOException {
+            // transfer the currently planned volume
+            long startTime = System.nanoTime();
+            long transferred = 0;
+            while (transferred < transferVolume) {
+                long count = transferVolume - transferred;
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "already transferred = "
+                            + "{0} byte, to be transferred = {1} byte",
+                            new Object[]{
+                                NUMBER_FORMAT.format(transferred),
+                                NUMBER_FORMAT.format(count)
+                            });
+                }
+                long tmpTransferred = destinationChannel.transferFrom(
+                        sourceChannel, position + transferred, count);
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.log(Level.FINEST, "{0} byte transferred",
+                            NUMBER_FORMAT.format(tmpTransferred));
+                }
+                if (tmpTransferred <= 0) {
+                    // the source file is shorter than expected
+                    throw new IOException("could not transfer data at "
+                            + "position " + (position + transferred));
+                }
+                transferred += tmpTransferred;
+                progress.addWrittenBytes(destinationIndex, tmpTransferred);
             }
+            recordLatency(Stage.TRANSFER, startTime);
         }
     }
 
-    private class ZIPTransferrer extends Thread {
+    private class Digester extends Thread {
 
-        private final File source;
-        private final ZipOutputStream zos;
+        private final FileChannel sourceChannel;
+        private final long startPosition;
+        private final MessageDigest digest = getDigest();
+        private byte[] sourceDigest;
+        private IOException failure;
 
-        public ZIPTransferrer(File source, ZipOutputStream zos) {
-            this.source = source;
-            this.zos = zos;
+        public Digester(FileChannel sourceChannel, long startPosition) {
+            this.sourceChannel = sourceChannel;
+            this.startPosition = startPosition;
+        }
+
+        /**
+         * returns the digest of the complete source file
+         *
+         * @return the digest of the complete source file or <tt>null</tt>,
+         * if the source file could not be read
+         */
+        public byte[] getSourceDigest() {
+            return sourceDigest;
+        }
+
+        /**
+         * returns the exception that stopped digesting the source file
+         *
+         * @return the exception that stopped digesting the source file or
+         * <tt>null</tt>, if the source file was digested
+         */
+        public IOException getFailure() {
+            return failure;
         }
 
         @Override
         public void run() {
-            byte[] buffer = new byte[bufferSlice];
-            FileInputStream fis = null;
-
+            ByteBuffer buffer = ByteBuffer.allocate(VERIFY_BUFFER_SIZE);
             try {
-                zos.putNextEntry(new ZipEntry(source.getName()));
-                fis = new FileInputStream(source);
-                // transfer the currently planned volume
-                int transferred = 0;
-                int length;
-                while ((length = fis.read(buffer)) > 0) {
-                    if (LOGGER.isLoggable(Level.FINEST)) {
-                        long count = transferVolume - length;
-                        LOGGER.log(Level.FINEST, "already transferred = " + "{0} byte, to be transferred = {1} byte",
-                                new Object[] { NUMBER_FORMAT.format(transferred), NUMBER_FORMAT.format(count) });
-                    }
-                    zos.write(buffer, 0, length);
-                    long tmpTransferred = length;
-                    if (LOGGER.isLoggable(Level.FINEST)) {
-                        LOGGER.log(Level.FINEST, "{0} byte transferred", NUMBER_FORMAT.format(tmpTransferred));
-                    }
-                    transferred += tmpTransferred;
-                    // wait for all other Transferrers to finish their slice
+                // a resumed copy did not transfer the start of the file
+                digestRange(buffer, 0, startPosition);
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "could not digest source", ex);
+                failure = ex;
+                transferFailed = true;
+            }
+            try {
+                while ((position < sourceLength) && !stopTransfer) {
+                    // digest the same slice the Transferrers are copying, a
+                    // failed party still waits at the barrier so that all
+                    // parties stop together
+                    if (failure == null) {
+                        try {
+                            digestRange(buffer, position, transferVolume);
+                        } catch (IOException ex) {
+                            LOGGER.log(Level.SEVERE,
+                                    "could not digest source", ex);
+                            failure = ex;
+                            transferFailed = true;
+                        }
+                    }
+                    // wait for all Transferrers to finish their slice
                     barrier.await();
                 }
-            } catch (IOException ex) {
-                LOGGER.log(Level.SEVERE, "could not transfer data", ex);
+                if (failure == null) {
+                    sourceDigest = digest.digest();
+                }
             } catch (InterruptedException ex) {
-                LOGGER.log(Level.SEVERE, null, ex);
+                // an interrupted transfer cancels the copy operation
+                cancel(removePartialDestinations);
             } catch (BrokenBarrierException ex) {
                 LOGGER.log(Level.SEVERE, null, ex);
             } finally {
                 try {
-                    zos.closeEntry();
+                    sourceChannel.close();
                 } catch (IOException ex) {
                     LOGGER.log(Level.SEVERE,
-                            "could not close destination channel", ex);
+                            "could not close source channel", ex);
+                }
+            }
+        }
+
+        private void digestRange(ByteBuffer buffer, long readPosition,
+                long remaining) throws IOException {
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int read = sourceChannel.read(buffer, readPosition);
+                if (read < 0) {
+                    throw new IOException("unexpected end of source file");
                 }
+                digest.update(buffer.array(), 0, read);
+                readPosition += read;
+                remaining -= read;
+            }
+        }
+    }
+
+    private class DestinationVerifier implements Callable<List<String>> {
+
+        private final List<VerificationItem> items;
+
+        public DestinationVerifier(List<VerificationItem> items) {
+            this.items = items;
+        }
+
+        @Override
+        public List<String> call() {
+            List<String> failures = new ArrayList<String>();
+            MessageDigest digest = getDigest();
+            byte[] buffer = new byte[VERIFY_BUFFER_SIZE];
+            for (VerificationItem item : items) {
+                waitWhilePaused();
+                if (cancelled) {
+                    break;
+                }
+                VerificationTask task = item.getTask();
+                File destination = item.getDestination();
+                LOGGER.log(Level.INFO, "Verifying \"{0}\"", destination);
+                if (task.isSampled()) {
+                    verifySamples(task, destination, failures);
+                    continue;
+                }
+                byte[] sourceDigest = task.getSourceDigest();
+                if (sourceDigest == null) {
+                    verificationReport.addCompleteFile(0, false);
+                    failures.add("could not read source \""
+                            + task.getSource() + "\"");
+                    continue;
+                }
+                digest.reset();
+                FileInputStream fileInputStream = null;
                 try {
-                    if (fis != null) {
-                        fis.close();
+                    fileInputStream = new FileInputStream(destination);
+                    int read;
+                    while ((read = fileInputStream.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                        long newVerifiedBytes = verifiedBytes.addAndGet(read);
+                        firePropertyChange(
+                                VERIFY_COUNTER_PROPERTY,
+                                newVerifiedBytes - read, newVerifiedBytes);
+                    }
+                    boolean match = MessageDigest.isEqual(
+                            sourceDigest, digest.digest());
+                    verificationReport.addCompleteFile(
+                            destination.length(), match);
+                    if (!match) {
+                        failures.add("\"" + destination
+                                + "\" differs from \"" + task.getSource()
+                                + "\"");
                     }
                 } catch (IOException ex) {
                     LOGGER.log(Level.SEVERE,
-                            "could not close source channel", ex);
+                            "could not read " + destination, ex);
+                    verificationReport.addCompleteFile(0, false);
+                    failures.add("could not read \"" + destination + "\"");
+                } finally {
+                    if (fileInputStream != null) {
+                        try {
+                            fileInputStream.close();
+                        } catch (IOException ex) {
+                            LOGGER.log(Level.SEVERE,
+                                    "could not close " + destination, ex);
+                        }
+                    }
+                }
+            }
+            return failures;
+        }
+
+        private void verifySamples(VerificationTask task, File destination,
+                List<String> failures) {
+            File source = task.getSource();
+            RandomAccessFile sourceFile = null;
+            RandomAccessFile destinationFile = null;
+            try {
+                sourceFile = new RandomAccessFile(source, "r");
+                destinationFile = new RandomAccessFile(destination, "r");
+                FileChannel sourceChannel = sourceFile.getChannel();
+                FileChannel destinationChannel = destinationFile.getChannel();
+                long length = sourceChannel.size();
+                if (length != destinationChannel.size()) {
+                    verificationReport.addSampledFile(length, 0, 0, false);
+                    failures.add("\"" + destination + "\" has not the same "
+                            + "size as \"" + source + "\"");
+                    return;
+                }
+                int sampleSize = task.getSampleSize();
+                long blocks = (length + sampleSize - 1) / sampleSize;
+                ByteBuffer sourceBuffer = ByteBuffer.allocate(sampleSize);
+                ByteBuffer destinationBuffer = ByteBuffer.allocate(sampleSize);
+                boolean match = true;
+                if (blocks <= task.getSampleCount()) {
+                    // small files are always compared completely
+                    for (long i = 0; (i < blocks) && match; i++) {
+                        match = compareBlock(sourceChannel, destinationChannel,
+                                i * sampleSize, sourceBuffer,
+                                destinationBuffer);
+                    }
+                    verificationReport.addCompleteFile(length, match);
+                } else {
+                    // compare randomly chosen distinct blocks in file order
+                    SortedSet<Long> samples = new TreeSet<Long>();
+                    Random random = new Random();
+                    while (samples.size() < task.getSampleCount()) {
+                        samples.add((long) (random.nextDouble() * blocks));
+                    }
+                    int comparedSamples = 0;
+                    long compared = 0;
+                    for (Long sample : samples) {
+                        long blockPosition = sample * sampleSize;
+                        match = compareBlock(sourceChannel, destinationChannel,
+                                blockPosition, sourceBuffer,
+                                destinationBuffer);
+                        comparedSamples++;
+                        compared += Math.min(
+                                sampleSize, length - blockPosition);
+                        if (!match) {
+                            break;
+                        }
+                    }
+                    // the first mismatch ends the comparison, only the
+                    // blocks actually compared count for the confidence
+                    verificationReport.addSampledFile(
+                            length, comparedSamples, compared, match);
+                }
+                if (!match) {
+                    failures.add("\"" + destination + "\" differs from \""
+                            + source + "\"");
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "could not compare " + destination
+                        + " with " + source, ex);
+                verificationReport.addSampledFile(0, 0, 0, false);
+                failures.add("could not compare \"" + destination
+                        + "\" with \"" + source + "\"");
+            } finally {
+                close(sourceFile);
+                close(destinationFile);
+            }
+        }
+
+        private boolean compareBlock(FileChannel sourceChannel,
+                FileChannel destinationChannel, long blockPosition,
+                ByteBuffer sourceBuffer, ByteBuffer destinationBuffer)
+                throws IOException {
+            read(sourceChannel, blockPosition, sourceBuffer);
+            read(destinationChannel, blockPosition, destinationBuffer);
+            int read = sourceBuffer.remaining();
+            long newVerifiedBytes = verifiedBytes.addAndGet(read);
+            firePropertyChange(VERIFY_COUNTER_PROPERTY,
+                    newVerifiedBytes - read, newVerifiedBytes);
+            return sourceBuffer.equals(destinationBuffer);
+        }
+
+        private void read(FileChannel channel, long readPosition,
+                ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, readPosition);
+                if (read < 0) {
+                    break;
+                }
+                readPosition += read;
+            }
+            buffer.flip();
+        }
+
+        private void close(RandomAccessFile file) {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, "could not close file", ex);
                 }
             }
         }
     }
-}
 
+    private static class BlockUpdater implements Callable<BlockUpdate> {
+
+        private final FileChannel sourceChannel;
+        private final FileChannel[] destinationChannels;
+        private final long blockPosition;
+        private final int blockSize;
+        private final Queue<ByteBuffer[]> bufferPool;
+
+        public BlockUpdater(FileChannel sourceChannel,
+                FileChannel[] destinationChannels, long blockPosition,
+                int blockSize, Queue<ByteBuffer[]> bufferPool) {
+            this.sourceChannel = sourceChannel;
+            this.destinationChannels = destinationChannels;
+            this.blockPosition = blockPosition;
+            this.blockSize = blockSize;
+            this.bufferPool = bufferPool;
+        }
+
+        @Override
+        public BlockUpdate call() throws IOException {
+            // the pool never holds more buffers than there are threads,
+            // because every running updater returns its buffers
+            ByteBuffer[] buffers = bufferPool.poll();
+            if ((buffers == null) || (buffers[0].capacity() != blockSize)) {
+                buffers = new ByteBuffer[]{
+                    ByteBuffer.allocateDirect(blockSize),
+                    ByteBuffer.allocateDirect(blockSize)
+                };
+            }
+            try {
+                return updateBlock(buffers[0], buffers[1]);
+            } finally {
+                bufferPool.offer(buffers);
+            }
+        }
+
+        private BlockUpdate updateBlock(ByteBuffer sourceBuffer,
+                ByteBuffer destinationBuffer) throws IOException {
+            // the source and destination blocks are both local, comparing
+            // their bytes directly is cheaper than hashing them and can not
+            // suffer from collisions
+            readBlock(sourceChannel, sourceBuffer);
+            long writtenBytes = 0;
+            for (FileChannel destinationChannel : destinationChannels) {
+                readBlock(destinationChannel, destinationBuffer);
+                if (!sourceBuffer.equals(destinationBuffer)) {
+                    long writePosition = blockPosition;
+                    while (sourceBuffer.hasRemaining()) {
+                        writePosition += destinationChannel.write(
+                                sourceBuffer, writePosition);
+                    }
+                    sourceBuffer.rewind();
+                    writtenBytes += sourceBuffer.remaining();
+                }
+            }
+            return new BlockUpdate(sourceBuffer.remaining(), writtenBytes);
+        }
+
+        private void readBlock(FileChannel channel, ByteBuffer buffer)
+                throws IOException {
+            buffer.clear();
+            long readPosition = blockPosition;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, readPosition);
+                if (read < 0) {
+                    break;
+                }
+                readPosition += read;
+            }
+            buffer.flip();
+        }
+    }
+
+    private static class BlockUpdate {
+
+        private final long comparedBytes;
+        private final long writtenBytes;
+
+        public BlockUpdate(long comparedBytes, long writtenBytes) {
+            this.comparedBytes = comparedBytes;
+            this.writtenBytes = writtenBytes;
+        }
+
+        public long getComparedBytes() {
+            return comparedBytes;
+        }
+
+        public long getWrittenBytes() {
+            return writtenBytes;
+        }
+    }
+
+    private static class VerificationTask {
+
+        private final File source;
+        private final File[] destinations;
+        private final byte[] sourceDigest;
+        private final int sampleCount;
+        private final int sampleSize;
+
+        public VerificationTask(
+                File source, File[] destinations, byte[] sourceDigest) {
+            this.source = source;
+            this.destinations = destinations;
+            this.sourceDigest = sourceDigest;
+            this.sampleCount = 0;
+            this.sampleSize = 0;
+        }
+
+        public VerificationTask(File source, File[] destinations,
+                int sampleCount, int sampleSize) {
+            this.source = source;
+            this.destinations = destinations;
+            this.sourceDigest = null;
+            this.sampleCount = sampleCount;
+            this.sampleSize = sampleSize;
+        }
+
+        public boolean isSampled() {
+            return sampleCount > 0;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        public int getSampleSize() {
+            return sampleSize;
+        }
+
+        public long getCompareLength() {
+            long length = source.length();
+            if (isSampled()) {
+                long blocks = (length + sampleSize - 1) / sampleSize;
+                if (blocks > sampleCount) {
+                    return (long) sampleCount * sampleSize;
+                }
+            }
+            return length;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public File[] getDestinations() {
+            return destinations;
+        }
+
+        public byte[] getSourceDigest() {
+            return sourceDigest;
+        }
+    }
+
+    private static class VerificationItem {
+
+        private final VerificationTask task;
+        private final File destination;
+
+        public VerificationItem(VerificationTask task, File destination) {
+            this.task = task;
+            this.destination = destination;
+        }
+
+        public VerificationTask getTask() {
+            return task;
+        }
+
+        public File getDestination() {
+            return destination;
+        }
+    }
+
+    private class ZipEntryExtractor implements Callable<ZipEntryExtractor> {
+
+        private static final int BUFFER_SIZE = 65536;
+        private final ZipArchiveReader archiveReader;
+        private final ZipArchiveEntry entry;
+        private final File[] targets;
+        private final File[] writtenFiles;
+
+        public ZipEntryExtractor(ZipArchiveReader archiveReader,
+                ZipArchiveEntry entry, File[] targets, boolean atomic) {
+            this.archiveReader = archiveReader;
+            this.entry = entry;
+            this.targets = targets;
+            writtenFiles = new File[targets.length];
+            for (int i = 0; i < targets.length; i++) {
+                writtenFiles[i] = atomic
+                        ? DestinationCommitter.getTemporaryFile(targets[i])
+                        : targets[i];
+            }
+        }
+
+        public File[] getTargets() {
+            return targets;
+        }
+
+        public File[] getWrittenFiles() {
+            return writtenFiles;
+        }
+
+        @Override
+        public ZipEntryExtractor call() throws IOException {
+            int method = entry.getMethod();
+            if ((method != ZipArchiveEntry.STORED)
+                    && (method != ZipArchiveEntry.DEFLATED)) {
+                throw new ZipException("unsupported compression method "
+                        + method + " of entry \"" + entry.getName() + '"');
+            }
+            FileChannel[] channels = new FileChannel[writtenFiles.length];
+            Inflater inflater = new Inflater(true);
+            try {
+                for (int i = 0; i < writtenFiles.length; i++) {
+                    File parent = writtenFiles[i].getParentFile();
+                    if (!parent.isDirectory() && !parent.mkdirs()
+                            && !parent.isDirectory()) {
+                        throw new IOException("Could not create directory \""
+                                + parent + "\"");
+                    }
+                    channels[i] = new FileOutputStream(
+                            writtenFiles[i]).getChannel();
+                }
+                long crc = extract(channels, inflater);
+                if (crc != entry.getCrc()) {
+                    throw new ZipException("invalid checksum of entry \""
+                            + entry.getName() + '"');
+                }
+                if (forceDestinations) {
+                    for (FileChannel channel : channels) {
+                        channel.force(true);
+                    }
+                }
+            } finally {
+                inflater.end();
+                for (FileChannel channel : channels) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+            }
+            for (File writtenFile : writtenFiles) {
+                writtenFile.setLastModified(entry.getTime());
+            }
+            return this;
+        }
+
+        private long extract(FileChannel[] channels, Inflater inflater)
+                throws IOException {
+            FileChannel archiveChannel = archiveReader.getChannel();
+            long position = archiveReader.getDataOffset(entry);
+            long end = position + entry.getCompressedSize();
+            byte[] input = new byte[BUFFER_SIZE];
+            byte[] output = new byte[BUFFER_SIZE];
+            boolean stored = entry.getMethod() == ZipArchiveEntry.STORED;
+            boolean padded = false;
+            CRC32 crc32 = new CRC32();
+            long size = 0;
+            while (stored ? (position < end) : !inflater.finished()) {
+                checkCancelled();
+                int length;
+                if (stored) {
+                    length = read(archiveChannel, position,
+                            output, (int) Math.min(BUFFER_SIZE, end - position));
+                    position += length;
+                } else {
+                    if (inflater.needsInput()) {
+                        if (position < end) {
+                            int inputLength = read(archiveChannel, position,
+                                    input, (int) Math.min(BUFFER_SIZE,
+                                            end - position));
+                            inflater.setInput(input, 0, inputLength);
+                            position += inputLength;
+                        } else if (!padded) {
+                            // zlib may need an extra byte to finish raw
+                            // deflate data
+                            inflater.setInput(new byte[1]);
+                            padded = true;
+                        } else {
+                            throw new ZipException("truncated entry \""
+                                    + entry.getName() + '"');
+                        }
+                    }
+                    try {
+                        length = inflater.inflate(output);
+                    } catch (DataFormatException ex) {
+                        throw new ZipException("invalid data of entry \""
+                                + entry.getName() + "\": " + ex.getMessage());
+                    }
+                }
+                crc32.update(output, 0, length);
+                for (FileChannel channel : channels) {
+                    ByteBuffer buffer = ByteBuffer.wrap(output, 0, length);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                size += length;
+                copiedBytes.addAndGet(length);
+                throttle(length);
+            }
+            if (size != entry.getSize()) {
+                throw new ZipException("invalid size of entry \""
+                        + entry.getName() + "\": expected " + entry.getSize()
+                        + " byte, but got " + size + " byte");
+            }
+            return crc32.getValue();
+        }
+
+        private int read(FileChannel channel, long position, byte[] buffer,
+                int length) throws IOException {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+            while (byteBuffer.hasRemaining()) {
+                if (channel.read(byteBuffer,
+                        position + byteBuffer.position()) < 0) {
+                    throw new ZipException("truncated entry \""
+                            + entry.getName() + '"');
+                }
+            }
+            return length;
+        }
+    }
+
+    /**
+     * the progress of the file that is currently transferred, updated by the
+     * transfer threads without coordination
+     */
+    private static class FileProgress {
+
+        private final File source;
+        private final long length;
+        private final File[] destinations;
+        private final long startPosition;
+        private final long startTime = System.nanoTime();
+        private final AtomicLongArray writtenBytes;
+
+        public FileProgress(File source, long length, File[] destinations,
+                long startPosition) {
+            this.source = source;
+            this.length = length;
+            this.destinations = destinations;
+            this.startPosition = startPosition;
+            writtenBytes = new AtomicLongArray(destinations.length);
+            for (int i = 0; i < destinations.length; i++) {
+                writtenBytes.set(i, startPosition);
+            }
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public File[] getDestinations() {
+            return destinations;
+        }
+
+        public long getWrittenBytes(int index) {
+            return writtenBytes.get(index);
+        }
+
+        public void addWrittenBytes(int index, long count) {
+            writtenBytes.addAndGet(index, count);
+        }
+
+        public double getThroughput(int index, long time) {
+            long duration = time - startTime;
+            if (duration <= 0) {
+                return 0;
+            }
+            return (writtenBytes.get(index) - startPosition)
+                    * 1e9 / duration;
+        }
+    }
+
+    private class PendingEntry {
+
+        private final String name;
+        private final File source;
+        private final long time;
+        private final int method;
+        private final ZipArchiveEntry existingEntry;
+        private final LinkedList<Future<ParallelDeflater.Chunk>> chunks =
+                new LinkedList<Future<ParallelDeflater.Chunk>>();
+        private final CompressedData compressedData = new CompressedData();
+        private boolean complete;
+        private long crc;
+        private long size;
+
+        public PendingEntry(String name, File source, int method) {
+            this.name = name;
+            this.source = source;
+            this.method = method;
+            time = source.lastModified();
+            existingEntry = null;
+        }
+
+        public PendingEntry(String name, File source,
+                ZipArchiveEntry existingEntry) {
+            this.name = name;
+            this.source = source;
+            this.existingEntry = existingEntry;
+            time = existingEntry.getTime();
+            method = existingEntry.getMethod();
+            complete = true;
+        }
+
+        public PendingEntry(String directoryName, long time) {
+            name = directoryName;
+            source = null;
+            this.time = time;
+            method = ZipArchiveEntry.STORED;
+            existingEntry = null;
+            complete = true;
+        }
+
+        public void addChunk(Future<ParallelDeflater.Chunk> chunk) {
+            chunks.add(chunk);
+        }
+
+        public void setComplete() {
+            complete = true;
+        }
+
+        public ParallelDeflater.Chunk takeChunk() throws IOException {
+            ParallelDeflater.Chunk chunk;
+            try {
+                chunk = chunks.removeFirst().get();
+            } catch (InterruptedException ex) {
+                cancel(removePartialDestinations);
+                throw new InterruptedIOException(
+                        "compression was interrupted");
+            } catch (ExecutionException ex) {
+                throw new IOException("could not compress \""
+                        + source + "\"", ex.getCause());
+            }
+            crc = ParallelDeflater.combineCrc(
+                    crc, chunk.getCrc(), chunk.getLength());
+            size += chunk.getLength();
+            if (chunk.getData() != null) {
+                compressedData.write(chunk.getData());
+            }
+            return chunk;
+        }
+
+        public boolean isWritable() {
+            return complete && chunks.isEmpty();
+        }
+
+        public void write(ZipArchiveWriter zipWriter) throws IOException {
+            if (existingEntry != null) {
+                // the compressed data of unchanged entries is copied from the
+                // existing archive
+                zipWriter.putEntry(new ZipArchiveEntry(name, time, method,
+                        existingEntry.getCrc(), existingEntry.getSize(),
+                        existingEntry.getCompressedSize()));
+                zipWriter.transferFrom(zipReader.getChannel(),
+                        zipReader.getDataOffset(existingEntry),
+                        existingEntry.getCompressedSize());
+                addCopiedBytes(existingEntry.getSize());
+                throttle(existingEntry.getSize());
+            } else if (source == null) {
+                // directory entry
+                zipWriter.putEntry(
+                        new ZipArchiveEntry(name, time, method, 0, 0, 0));
+            } else if (method == ZipArchiveEntry.STORED) {
+                zipWriter.putEntry(new ZipArchiveEntry(
+                        name, time, method, crc, size, size));
+                // stored files are transferred without copying them through
+                // the Java heap
+                FileChannel sourceChannel =
+                        new FileInputStream(source).getChannel();
+                try {
+                    zipWriter.transferFrom(sourceChannel, 0, size);
+                } finally {
+                    sourceChannel.close();
+                }
+            } else {
+                zipWriter.putEntry(new ZipArchiveEntry(name, time, method,
+                        crc, size, compressedData.getSize()));
+                compressedData.writeTo(zipWriter);
+            }
+            zipWriter.closeEntry();
+        }
+
+        public void discard() {
+            for (Future<ParallelDeflater.Chunk> chunk : chunks) {
+                chunk.cancel(true);
+            }
+            compressedData.discard();
+        }
+    }
+
+    /**
+     * the compressed data of an entry, kept in memory as long as it is small
+     * and spilled to a temporary file otherwise
+     */
+    private static class CompressedData {
+
+        private static final int MEMORY_LIMIT = 16777216; // 16 MiB
+        private final ByteArrayOutputStream memory =
+                new ByteArrayOutputStream();
+        private File file;
+        private FileOutputStream fileOutputStream;
+        private long size;
+
+        public void write(byte[] data) throws IOException {
+            if ((fileOutputStream == null)
+                    && (memory.size() + data.length > MEMORY_LIMIT)) {
+                file = File.createTempFile("filecopier", ".deflated");
+                fileOutputStream = new FileOutputStream(file);
+                memory.writeTo(fileOutputStream);
+                memory.reset();
+            }
+            if (fileOutputStream == null) {
+                memory.write(data);
+            } else {
+                fileOutputStream.write(data);
+            }
+            size += data.length;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void writeTo(ZipArchiveWriter zipWriter) throws IOException {
+            if (fileOutputStream == null) {
+                zipWriter.write(memory.toByteArray(), 0, memory.size());
+                return;
+            }
+            fileOutputStream.close();
+            fileOutputStream = null;
+            FileChannel channel = new FileInputStream(file).getChannel();
+            try {
+                zipWriter.transferFrom(channel, 0, size);
+            } finally {
+                channel.close();
+                discard();
+            }
+        }
+
+        public void discard() {
+            if (fileOutputStream != null) {
+                try {
+                    fileOutputStream.close();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, null, ex);
+                }
+                fileOutputStream = null;
+            }
+            if ((file != null) && file.exists() && !file.delete()) {
+                LOGGER.log(Level.WARNING, "could not delete \"{0}\"", file);
+            }
+        }
+    }
+}
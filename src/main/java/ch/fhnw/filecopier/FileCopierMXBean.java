@@ -0,0 +1,166 @@
+/*
+ * FileCopierMXBean.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+/**
+ * The management interface of a {@link FileCopier} (see
+ * {@link FileCopier#registerMBean()}). All values are read from the counters
+ * of the copier without interfering with a running copy operation.
+ */
+public interface FileCopierMXBean {
+
+    /**
+     * returns the state of the copier
+     *
+     * @return the state of the copier
+     */
+    String getState();
+
+    /**
+     * returns the byte count of all source files
+     *
+     * @return the byte count of all source files
+     */
+    long getByteCount();
+
+    /**
+     * returns the sum of all bytes copied so far
+     *
+     * @return the sum of all bytes copied so far
+     */
+    long getCopiedBytes();
+
+    /**
+     * returns the number of source files and directories copied so far
+     *
+     * @return the number of source files and directories copied so far
+     */
+    long getCopiedFiles();
+
+    /**
+     * returns the number of source files and directories that are not yet
+     * copied
+     *
+     * @return the number of source files and directories that are not yet
+     * copied
+     */
+    long getRemainingFiles();
+
+    /**
+     * returns the estimated remaining time
+     *
+     * @return the estimated remaining time (in ms) or <tt>-1</tt>, if the
+     * remaining time can not be estimated yet
+     */
+    long getRemainingTime();
+
+    /**
+     * returns the EWMA bandwidth of the copy operation
+     *
+     * @return the EWMA bandwidth of the copy operation (in byte/s)
+     */
+    double getBandwidth();
+
+    /**
+     * returns the file that is currently copied
+     *
+     * @return the file that is currently copied or <tt>null</tt>, if no file
+     * is copied
+     */
+    String getCurrentFile();
+
+    /**
+     * returns the destinations of the current file
+     *
+     * @return the destinations of the current file
+     */
+    String[] getDestinations();
+
+    /**
+     * returns the throughput of every destination of the current file
+     *
+     * @return the throughput of every destination of the current file (in
+     * byte/s)
+     */
+    double[] getDestinationThroughputs();
+
+    /**
+     * returns the size of the slices the files are currently copied in
+     *
+     * @return the size of the slices the files are currently copied in
+     */
+    long getSliceSize();
+
+    /**
+     * returns the number of failed file transfers and other errors that
+     * stopped a copy operation
+     *
+     * @return the number of failed file transfers and other errors that
+     * stopped a copy operation
+     */
+    long getFailedCopies();
+
+    /**
+     * returns the number of mismatches found by the last verification
+     *
+     * @return the number of mismatches found by the last verification
+     */
+    int getVerificationMismatches();
+
+    /**
+     * returns the bandwidth limit of the copy operation
+     *
+     * @return the maximum bandwidth in byte/s or <tt>0</tt>, if the bandwidth
+     * is not limited
+     */
+    long getMaxBandwidth();
+
+    /**
+     * throttles the copy operation
+     *
+     * @param maxBandwidth the maximum bandwidth in byte/s or <tt>0</tt>, if
+     * the bandwidth should not be limited
+     */
+    void setMaxBandwidth(long maxBandwidth);
+
+    /**
+     * cancels the running copy operation and keeps all partial destinations
+     * (like {@link FileCopier#cancel()}), so that a copy job with a journal
+     * can be resumed later
+     */
+    void cancel();
+
+    /**
+     * cancels the running copy operation and removes all partial
+     * destinations (like {@link FileCopier#cancel(boolean)} with
+     * <tt>true</tt>)
+     */
+    void cancelAndRemovePartialDestinations();
+
+    /**
+     * pauses the running copy operation
+     */
+    void pause();
+
+    /**
+     * resumes a paused copy operation
+     */
+    void resume();
+}
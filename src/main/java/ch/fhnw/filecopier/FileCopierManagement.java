@@ -0,0 +1,140 @@
+/*
+ * FileCopierManagement.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+
+/**
+ * The MBean of a {@link FileCopier}
+ */
+class FileCopierManagement implements FileCopierMXBean {
+
+    private final FileCopier fileCopier;
+
+    /**
+     * creates a new FileCopierManagement
+     *
+     * @param fileCopier the copier to manage
+     */
+    public FileCopierManagement(FileCopier fileCopier) {
+        this.fileCopier = fileCopier;
+    }
+
+    @Override
+    public String getState() {
+        return fileCopier.getState().name();
+    }
+
+    @Override
+    public long getByteCount() {
+        return fileCopier.getByteCount();
+    }
+
+    @Override
+    public long getCopiedBytes() {
+        return fileCopier.getCopiedBytes();
+    }
+
+    @Override
+    public long getCopiedFiles() {
+        return fileCopier.getCopiedFiles();
+    }
+
+    @Override
+    public long getRemainingFiles() {
+        return fileCopier.getFileCount() - fileCopier.getCopiedFiles();
+    }
+
+    @Override
+    public long getRemainingTime() {
+        return fileCopier.getRemainingTime();
+    }
+
+    @Override
+    public double getBandwidth() {
+        return fileCopier.getThroughputEstimator().getBandwidth();
+    }
+
+    @Override
+    public String getCurrentFile() {
+        File currentFile = fileCopier.getProgress().getCurrentFile();
+        return (currentFile == null) ? null : currentFile.getPath();
+    }
+
+    @Override
+    public String[] getDestinations() {
+        CopyProgress progress = fileCopier.getProgress();
+        String[] destinations = new String[progress.getDestinationCount()];
+        for (int i = 0; i < destinations.length; i++) {
+            destinations[i] = progress.getDestination(i).getPath();
+        }
+        return destinations;
+    }
+
+    @Override
+    public double[] getDestinationThroughputs() {
+        return fileCopier.getDestinationThroughputs();
+    }
+
+    @Override
+    public long getSliceSize() {
+        return fileCopier.getSliceSize();
+    }
+
+    @Override
+    public long getFailedCopies() {
+        return fileCopier.getFailedCopies();
+    }
+
+    @Override
+    public int getVerificationMismatches() {
+        return fileCopier.getVerificationReport().getMismatches();
+    }
+
+    @Override
+    public long getMaxBandwidth() {
+        return fileCopier.getMaxBandwidth();
+    }
+
+    @Override
+    public void setMaxBandwidth(long maxBandwidth) {
+        fileCopier.setMaxBandwidth(maxBandwidth);
+    }
+
+    @Override
+    public void cancel() {
+        fileCopier.cancel();
+    }
+
+    @Override
+    public void cancelAndRemovePartialDestinations() {
+        fileCopier.cancel(true);
+    }
+
+    @Override
+    public void pause() {
+        fileCopier.pause();
+    }
+
+    @Override
+    public void resume() {
+        fileCopier.resume();
+    }
+}
@@ -103,11 +103,15 @@ public class FileCopierPanel extends JPanel implements PropertyChangeListener {
         if (this.fileCopier != null) {
             this.fileCopier.removePropertyChangeListener(
                     FileCopier.STATE_PROPERTY, this);
+            this.fileCopier.removePropertyChangeListener(
+                    FileCopier.VERIFY_COUNTER_PROPERTY, this);
 //            this.fileCopier.removePropertyChangeListener(
 //                    FileCopier.BYTE_COUNTER_PROPERTY, this);
         }
         this.fileCopier = fileCopier;
         fileCopier.addPropertyChangeListener(FileCopier.STATE_PROPERTY, this);
+        fileCopier.addPropertyChangeListener(
+                FileCopier.VERIFY_COUNTER_PROPERTY, this);
 //        fileCopier.addPropertyChangeListener(
 //                FileCopier.BYTE_COUNTER_PROPERTY, this);
     }
@@ -164,6 +168,14 @@ public class FileCopierPanel extends JPanel implements PropertyChangeListener {
                             updateProgressBar();
                             break;
 
+                        case VERIFYING:
+                            update();
+                            updateTimer.stop();
+                            progressBar.setValue(0);
+                            progressBar.setString(
+                                    strings.getString("Verifying"));
+                            break;
+
                         case END:
                             update();
                             updateTimer.stop();
@@ -183,6 +195,15 @@ public class FileCopierPanel extends JPanel implements PropertyChangeListener {
                         propertyName)) {
                     bytesCopied = ((Long) evt.getNewValue()).longValue();
                     updateProgressBar();
+                } else if (FileCopier.VERIFY_COUNTER_PROPERTY.equals(
+                        propertyName)) {
+                    long verifyByteCount = fileCopier.getVerifyByteCount();
+                    if (verifyByteCount != 0) {
+                        long bytesVerified =
+                                ((Long) evt.getNewValue()).longValue();
+                        progressBar.setValue(
+                                (int) ((100 * bytesVerified) / verifyByteCount));
+                    }
                 }
             }
         });
@@ -365,10 +386,15 @@ public class FileCopierPanel extends JPanel implements PropertyChangeListener {
 
         transferredDataVolumeLabel.setDataVolume(bytesCopied);
 
-        long estimate = (timeSpent * byteCount) / bytesCopied;
+        // the estimator of the copier follows changes of the speed, the
+        // lifetime average is only used until it has enough samples
+        long remaining = fileCopier.getRemainingTime();
+        if (remaining < 0) {
+            remaining = (timeSpent * byteCount) / bytesCopied - timeSpent;
+        }
+        long estimate = timeSpent + remaining;
         estimatedDurationLabel.setText(getTimeString(estimate));
 
-        long remaining = estimate - timeSpent;
         estimatedRemainingTimeLabel.setText(getTimeString(remaining));
 
         missingDataVolumeLabel.setDataVolume(byteCount - bytesCopied);
@@ -0,0 +1,169 @@
+/*
+ * FlightRecorderEvents.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Java Flight Recorder events of copy operations. This class is only
+ * loaded by {@link CopyEvents#getInstance()} when the Flight Recorder API is
+ * available. Disabled events are never allocated beyond their check.
+ */
+class FlightRecorderEvents extends CopyEvents {
+
+    private static final String CATEGORY = "File Copier";
+
+    @Override
+    public Object beginScanDirectory() {
+        return begin(new ScanDirectoryEvent());
+    }
+
+    @Override
+    public void endScanDirectory(Object event, File directory, int fileCount,
+            long byteCount) {
+        if (event != null) {
+            ScanDirectoryEvent scanDirectoryEvent = (ScanDirectoryEvent) event;
+            scanDirectoryEvent.directory = directory.getPath();
+            scanDirectoryEvent.fileCount = fileCount;
+            scanDirectoryEvent.byteCount = byteCount;
+            scanDirectoryEvent.commit();
+        }
+    }
+
+    @Override
+    public Object beginFileCopy() {
+        return begin(new FileCopyEvent());
+    }
+
+    @Override
+    public void endFileCopy(Object event, File source, long size,
+            int destinationCount) {
+        if (event != null) {
+            FileCopyEvent fileCopyEvent = (FileCopyEvent) event;
+            fileCopyEvent.source = source.getPath();
+            fileCopyEvent.size = size;
+            fileCopyEvent.destinationCount = destinationCount;
+            fileCopyEvent.commit();
+        }
+    }
+
+    @Override
+    public Object beginSlice() {
+        return begin(new SliceEvent());
+    }
+
+    @Override
+    public void endSlice(Object event, long transferVolume, long newSlice) {
+        if (event != null) {
+            SliceEvent sliceEvent = (SliceEvent) event;
+            sliceEvent.transferVolume = transferVolume;
+            sliceEvent.newSlice = newSlice;
+            sliceEvent.commit();
+        }
+    }
+
+    @Override
+    public Object beginBarrierWait() {
+        return begin(new BarrierWaitEvent());
+    }
+
+    @Override
+    public void endBarrierWait(Object event, File destination) {
+        if (event != null) {
+            BarrierWaitEvent barrierWaitEvent = (BarrierWaitEvent) event;
+            barrierWaitEvent.destination = destination.getPath();
+            barrierWaitEvent.commit();
+        }
+    }
+
+    private static Event begin(Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Name("ch.fhnw.filecopier.ScanDirectory")
+    @Label("Scan Directory")
+    @Category(CATEGORY)
+    @Description("A source directory was scanned (including its "
+            + "subdirectories)")
+    static class ScanDirectoryEvent extends Event {
+
+        @Label("Directory")
+        String directory;
+        @Label("File Count")
+        @Description("The number of matching files and directories")
+        int fileCount;
+        @Label("Byte Count")
+        @DataAmount
+        long byteCount;
+    }
+
+    @Name("ch.fhnw.filecopier.FileCopy")
+    @Label("File Copy")
+    @Category(CATEGORY)
+    @Description("A file was transferred to all of its destinations")
+    static class FileCopyEvent extends Event {
+
+        @Label("Source")
+        String source;
+        @Label("Size")
+        @DataAmount
+        long size;
+        @Label("Destination Count")
+        int destinationCount;
+    }
+
+    @Name("ch.fhnw.filecopier.Slice")
+    @Label("Slice")
+    @Category(CATEGORY)
+    @Description("A slice of a file was transferred to all of its "
+            + "destinations")
+    static class SliceEvent extends Event {
+
+        @Label("Transfer Volume")
+        @DataAmount
+        long transferVolume;
+        @Label("New Slice Size")
+        @Description("The size of the next slice after adapting to the "
+                + "measured bandwidth")
+        @DataAmount
+        long newSlice;
+    }
+
+    @Name("ch.fhnw.filecopier.BarrierWait")
+    @Label("Barrier Wait")
+    @Category(CATEGORY)
+    @Description("A transferrer waited for the other transferrers to finish "
+            + "their slice")
+    static class BarrierWaitEvent extends Event {
+
+        @Label("Destination")
+        String destination;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * LatencyHistogram.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.text.NumberFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with a fixed memory footprint (like
+ * HdrHistogram). Every power of two is divided into 32 linear buckets, so
+ * every recorded value is known with a relative precision of about 3%.
+ * Values are recorded lock-free from any number of threads. All values are
+ * in nanoseconds.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKET_COUNT get their own bucket, every following
+    // power of two up to 2^62 gets SUB_BUCKET_COUNT buckets
+    private static final int BUCKET_COUNT =
+            SUB_BUCKET_COUNT * (64 - SUB_BUCKET_BITS);
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * records a latency
+     *
+     * @param value the latency (in ns), negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMin = min.get();
+        while ((value < currentMin)
+                && !min.compareAndSet(currentMin, value)) {
+            currentMin = min.get();
+        }
+        long currentMax = max.get();
+        while ((value > currentMax)
+                && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Removes all recorded values. Values that are recorded concurrently may
+     * be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * returns the number of recorded values
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * returns the smallest recorded value
+     *
+     * @return the smallest recorded value or <tt>0</tt>, if no value was
+     * recorded
+     */
+    public long getMin() {
+        long currentMin = min.get();
+        return (currentMin == Long.MAX_VALUE) ? 0 : currentMin;
+    }
+
+    /**
+     * returns the largest recorded value
+     *
+     * @return the largest recorded value
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * returns the mean of all recorded values
+     *
+     * @return the mean of all recorded values
+     */
+    public double getMean() {
+        long currentCount = count.get();
+        return (currentCount == 0) ? 0 : (double) sum.get() / currentCount;
+    }
+
+    /**
+     * Returns the value at a given percentile. The result is the largest
+     * value that falls into the same bucket as the value at the percentile.
+     *
+     * @param percentile the percentile (between 0 and 100)
+     * @return the value at the given percentile or <tt>0</tt>, if no value
+     * was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if ((percentile < 0) || (percentile > 100)) {
+            throw new IllegalArgumentException(
+                    "invalid percentile: " + percentile);
+        }
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulated += snapshot[i];
+            if (cumulated >= rank) {
+                return Math.min(getHighestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        NumberFormat numberFormat = NumberFormat.getInstance();
+        return "count = " + numberFormat.format(getCount())
+                + ", mean = " + formatMicros(numberFormat, getMean())
+                + ", p50 = " + formatMicros(
+                        numberFormat, getValueAtPercentile(50))
+                + ", p90 = " + formatMicros(
+                        numberFormat, getValueAtPercentile(90))
+                + ", p99 = " + formatMicros(
+                        numberFormat, getValueAtPercentile(99))
+                + ", max = " + formatMicros(numberFormat, getMax());
+    }
+
+    private static String formatMicros(NumberFormat numberFormat,
+            double nanos) {
+        numberFormat.setMaximumFractionDigits(1);
+        return numberFormat.format(nanos / TimeUnit.MICROSECONDS.toNanos(1))
+                + " \u00b5s";
+    }
+
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // the position of the highest bit selects the power of two, the
+        // following bits select the linear bucket within it
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getHighestValue(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long lowestValue = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * ParallelDeflater.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses chunks of files or streams on a pool of worker threads. Every
+ * chunk is compressed into raw deflate data that ends on a byte boundary (the
+ * last chunk of a file finishes the deflate stream), so that the compressed
+ * chunks of a file can simply be concatenated. The last 32 KiB of the previous chunk
+ * are used as dictionary, which keeps the compression ratio close to the one
+ * of a sequential compression.
+ */
+class ParallelDeflater {
+
+    /**
+     * the size of the chunks a file is split into
+     */
+    public static final int CHUNK_SIZE = 1048576; // 1 MiB
+    /**
+     * the size of the deflate window
+     */
+    public static final int DICTIONARY_SIZE = 32768;
+    // the size of the block that is probed for compressibility
+    private static final int PROBE_SIZE = 65536;
+    // the maximum ratio of compressed and original size of a compressible
+    // block
+    private static final double PROBE_RATIO = 0.95;
+    private static final ThreadLocal<byte[]> INPUT_BUFFERS =
+            new ThreadLocal<byte[]>() {
+                @Override
+                protected byte[] initialValue() {
+                    return new byte[DICTIONARY_SIZE + CHUNK_SIZE];
+                }
+            };
+    private static final ThreadLocal<byte[]> OUTPUT_BUFFERS =
+            new ThreadLocal<byte[]>() {
+                @Override
+                protected byte[] initialValue() {
+                    return new byte[65536];
+                }
+            };
+    private final ExecutorService executorService;
+    private final int threads;
+
+    /**
+     * creates a new ParallelDeflater with one thread per processor
+     */
+    public ParallelDeflater() {
+        threads = Runtime.getRuntime().availableProcessors();
+        executorService = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * returns the number of worker threads
+     *
+     * @return the number of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * submits a chunk of a file for compression
+     *
+     * @param file the file
+     * @param position the position of the chunk within the file
+     * @param length the length of the chunk (at most {@link #CHUNK_SIZE})
+     * @param last if <tt>true</tt>, the chunk finishes the deflate stream
+     * @param level the compression level
+     * @return the future compressed chunk
+     */
+    public Future<Chunk> submit(final File file, final long position,
+            final int length, final boolean last, final int level) {
+        return executorService.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() throws IOException {
+                return deflate(file, position, length, last, level);
+            }
+        });
+    }
+
+    /**
+     * submits a chunk of data for compression
+     *
+     * @param input the array that contains the dictionary followed by the
+     * chunk, it must not be modified afterwards
+     * @param dictionaryLength the length of the dictionary (at most
+     * {@link #DICTIONARY_SIZE})
+     * @param length the length of the chunk
+     * @param last if <tt>true</tt>, the chunk finishes the deflate stream
+     * @param level the compression level
+     * @return the future compressed chunk
+     */
+    public Future<Chunk> submit(final byte[] input, final int dictionaryLength,
+            final int length, final boolean last, final int level) {
+        return executorService.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() {
+                return deflate(input, dictionaryLength, length, last, level);
+            }
+        });
+    }
+
+    /**
+     * Submits a chunk of a file that is stored without compression. Only the
+     * checksum of the chunk is computed, the returned chunk contains no data.
+     *
+     * @param file the file
+     * @param position the position of the chunk within the file
+     * @param length the length of the chunk (at most {@link #CHUNK_SIZE})
+     * @return the future chunk
+     */
+    public Future<Chunk> submitStored(final File file, final long position,
+            final int length) {
+        return executorService.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() throws IOException {
+                byte[] input = INPUT_BUFFERS.get();
+                read(file, position, input, 0, length);
+                CRC32 crc32 = new CRC32();
+                crc32.update(input, 0, length);
+                return new Chunk(crc32.getValue(), length, null);
+            }
+        });
+    }
+
+    /**
+     * Probes if a file can be compressed by quickly compressing its first
+     * block.
+     *
+     * @param file the file
+     * @return <tt>true</tt>, if the first block of the file can be compressed
+     * @throws IOException if an I/O exception occurs
+     */
+    public static boolean isCompressible(File file) throws IOException {
+        int length = (int) Math.min(PROBE_SIZE, file.length());
+        if (length == 0) {
+            return false;
+        }
+        byte[] input = new byte[length];
+        read(file, 0, input, 0, length);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] output = new byte[length];
+            int compressedLength = 0;
+            while (!deflater.finished() && (compressedLength < length)) {
+                compressedLength += deflater.deflate(
+                        output, compressedLength, length - compressedLength);
+            }
+            // compression must save at least a few percent
+            return deflater.finished()
+                    && (compressedLength < length * PROBE_RATIO);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * stops all worker threads
+     */
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Combines the CRC-32 checksums of two consecutive blocks of data (see
+     * crc32_combine() of zlib).
+     *
+     * @param crc1 the checksum of the first block
+     * @param crc2 the checksum of the second block
+     * @param length2 the length of the second block
+     * @return the checksum of both blocks
+     */
+    public static long combineCrc(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // put operator for one zero bit in odd
+        odd[0] = 0xedb88320L; // CRC-32 polynomial
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // put operator for two zero bits in even
+        gf2MatrixSquare(even, odd);
+        // put operator for four zero bits in odd
+        gf2MatrixSquare(odd, even);
+
+        // apply length2 zeros to crc1 (first square will put the operator for
+        // one zero byte, eight zero bits, in even)
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    private static Chunk deflate(File file, long position, int length,
+            boolean last, int level) throws IOException {
+        // read the chunk together with the preceding dictionary
+        byte[] input = INPUT_BUFFERS.get();
+        int dictionaryLength = (int) Math.min(DICTIONARY_SIZE, position);
+        read(file, position - dictionaryLength, input, 0,
+                dictionaryLength + length);
+        return deflate(input, dictionaryLength, length, last, level);
+    }
+
+    private static Chunk deflate(byte[] input, int dictionaryLength,
+            int length, boolean last, int level) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(input, dictionaryLength, length);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionaryLength > 0) {
+                deflater.setDictionary(input, 0, dictionaryLength);
+            }
+            deflater.setInput(input, dictionaryLength, length);
+            byte[] output = OUTPUT_BUFFERS.get();
+            ByteArrayOutputStream compressed =
+                    new ByteArrayOutputStream(length / 2 + 64);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(output);
+                    compressed.write(output, 0, count);
+                }
+            } else {
+                // a sync flush ends the chunk on a byte boundary
+                int count;
+                do {
+                    count = deflater.deflate(
+                            output, 0, output.length, Deflater.SYNC_FLUSH);
+                    compressed.write(output, 0, count);
+                } while (count == output.length);
+            }
+            return new Chunk(crc32.getValue(), length,
+                    compressed.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void read(File file, long position, byte[] buffer,
+            int offset, int length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            randomAccessFile.seek(position);
+            randomAccessFile.readFully(buffer, offset, length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * a compressed chunk of a file
+     */
+    public static class Chunk {
+
+        private final long crc;
+        private final int length;
+        private final byte[] data;
+
+        /**
+         * creates a new Chunk
+         *
+         * @param crc the CRC-32 checksum of the uncompressed chunk
+         * @param length the length of the uncompressed chunk
+         * @param data the compressed data or <tt>null</tt>, if the chunk is
+         * stored
+         */
+        public Chunk(long crc, int length, byte[] data) {
+            this.crc = crc;
+            this.length = length;
+            this.data = data;
+        }
+
+        /**
+         * returns the CRC-32 checksum of the uncompressed chunk
+         *
+         * @return the CRC-32 checksum of the uncompressed chunk
+         */
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * returns the length of the uncompressed chunk
+         *
+         * @return the length of the uncompressed chunk
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * returns the compressed data
+         *
+         * @return the compressed data or <tt>null</tt>, if the chunk is
+         * stored
+         */
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * ParallelGzipChannel.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A channel that compresses everything written to it into a gzip stream (like
+ * pigz). The data is split into chunks that are compressed in parallel by a
+ * {@link ParallelDeflater} and written in their original order as a single
+ * gzip member. The compressed stream is written to several channels at once.
+ */
+class ParallelGzipChannel implements WritableByteChannel {
+
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, // magic number
+        8, // compression method deflate
+        0, // flags
+        0, 0, 0, 0, // no modification time
+        0, // extra flags
+        3 // operating system: Unix
+    };
+    private final ParallelDeflater deflater;
+    private final int level;
+    private final FileChannel[] channels;
+    private final LinkedList<Future<ParallelDeflater.Chunk>> chunks =
+            new LinkedList<Future<ParallelDeflater.Chunk>>();
+    private byte[] input = newInput();
+    private int dictionaryLength;
+    private int inputLength;
+    private long crc;
+    private long size;
+    private boolean open = true;
+
+    /**
+     * creates a new ParallelGzipChannel
+     *
+     * @param deflater the deflater that compresses the chunks
+     * @param level the compression level
+     * @param channels the channels to write the gzip stream to
+     * @throws IOException if an I/O exception occurs
+     */
+    public ParallelGzipChannel(ParallelDeflater deflater, int level,
+            FileChannel... channels) throws IOException {
+        this.deflater = deflater;
+        this.level = level;
+        this.channels = channels;
+        writeToChannels(ByteBuffer.wrap(HEADER));
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int count = source.remaining();
+        while (source.hasRemaining()) {
+            int length = Math.min(source.remaining(),
+                    ParallelDeflater.CHUNK_SIZE - inputLength);
+            source.get(input, dictionaryLength + inputLength, length);
+            inputLength += length;
+            if (inputLength == ParallelDeflater.CHUNK_SIZE) {
+                submitChunk(false);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * finishes the gzip stream and closes all channels
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            submitChunk(true);
+            while (!chunks.isEmpty()) {
+                writeChunk();
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            trailer.order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc);
+            trailer.putInt((int) size); // the size modulo 2^32
+            trailer.flip();
+            writeToChannels(trailer);
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    private void submitChunk(boolean last) throws IOException {
+        chunks.add(deflater.submit(
+                input, dictionaryLength, inputLength, last, level));
+
+        // the end of this chunk is the dictionary of the next one
+        byte[] nextInput = newInput();
+        int nextDictionaryLength = Math.min(
+                ParallelDeflater.DICTIONARY_SIZE,
+                dictionaryLength + inputLength);
+        System.arraycopy(input, dictionaryLength + inputLength
+                - nextDictionaryLength, nextInput, 0, nextDictionaryLength);
+        input = nextInput;
+        dictionaryLength = nextDictionaryLength;
+        inputLength = 0;
+
+        // bound the memory used by chunks
+        while (chunks.size() > 2 * deflater.getThreads()) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        ParallelDeflater.Chunk chunk;
+        try {
+            chunk = chunks.removeFirst().get();
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException("compression was interrupted");
+        } catch (ExecutionException ex) {
+            throw new IOException("could not compress", ex.getCause());
+        }
+        crc = ParallelDeflater.combineCrc(
+                crc, chunk.getCrc(), chunk.getLength());
+        size += chunk.getLength();
+        writeToChannels(ByteBuffer.wrap(chunk.getData()));
+    }
+
+    private void writeToChannels(ByteBuffer data) throws IOException {
+        for (FileChannel channel : channels) {
+            ByteBuffer duplicate = data.duplicate();
+            while (duplicate.hasRemaining()) {
+                channel.write(duplicate);
+            }
+        }
+    }
+
+    private static byte[] newInput() {
+        return new byte[ParallelDeflater.DICTIONARY_SIZE
+                + ParallelDeflater.CHUNK_SIZE];
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * StatsFileReader.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the stats file of a {@link FileCopier} (see
+ * {@link FileCopier#setStatsFile(java.io.File)}). The stats file has a fixed
+ * layout of big-endian values:
+ * <pre>
+ * offset  type  value
+ *      0  int   magic number 0x46435354 ("FCST")
+ *      4  int   layout version (1)
+ *      8  long  sequence number, odd while the values are updated
+ *     16  int   state (ordinal of {@link FileCopier.State})
+ *     24  long  byte count of all source files
+ *     32  long  copied bytes
+ *     40  long  number of all source files and directories
+ *     48  long  number of copied files and directories
+ *     56  long  bandwidth in byte/s
+ *     64  long  estimated remaining time in ms (-1 if unknown)
+ *     72  long  index of the current file (starting at 1, 0 if none)
+ *     80  long  time of the last update in ms since the epoch
+ * </pre>
+ * The values are consistent when the sequence number is even and did not
+ * change while they were read (like a seqlock). Java offers no ordered
+ * accesses to memory-mapped files, so the sequence number and the values are
+ * written and read with plain accesses. Consistency is therefore best-effort:
+ * it holds on platforms with strong memory ordering like x86, but on weakly
+ * ordered platforms (e.g. ARM) a snapshot may occasionally mix values of two
+ * updates. The file can be watched
+ * from the command line with<br>
+ * <tt>java -cp filecopier.jar ch.fhnw.filecopier.StatsFileReader
+ * &lt;stats file&gt; [interval in ms]</tt>
+ */
+public class StatsFileReader implements Closeable {
+
+    static final int MAGIC = 0x46435354;
+    static final int VERSION = 1;
+    static final int SIZE = 128;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int STATE_OFFSET = 16;
+    static final int BYTE_COUNT_OFFSET = 24;
+    static final int COPIED_BYTES_OFFSET = 32;
+    static final int FILE_COUNT_OFFSET = 40;
+    static final int COPIED_FILES_OFFSET = 48;
+    static final int BANDWIDTH_OFFSET = 56;
+    static final int REMAINING_TIME_OFFSET = 64;
+    static final int CURRENT_FILE_OFFSET = 72;
+    static final int UPDATE_TIME_OFFSET = 80;
+    private static final int MAX_RETRIES = 1000;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private FileCopier.State state;
+    private long byteCount;
+    private long copiedBytes;
+    private long fileCount;
+    private long copiedFiles;
+    private long bandwidth;
+    private long remainingTime;
+    private long currentFile;
+    private long updateTime;
+
+    /**
+     * creates a new StatsFileReader
+     *
+     * @param statsFile the stats file to read
+     * @throws IOException if the stats file can not be read or is no stats
+     * file
+     */
+    public StatsFileReader(File statsFile) throws IOException {
+        randomAccessFile = new RandomAccessFile(statsFile, "r");
+        try {
+            if (randomAccessFile.length() < SIZE) {
+                throw new IOException("\"" + statsFile + "\" is too short");
+            }
+            buffer = randomAccessFile.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, SIZE);
+            if ((buffer.getInt(0) != MAGIC)
+                    || (buffer.getInt(4) != VERSION)) {
+                throw new IOException(
+                        "\"" + statsFile + "\" is no stats file");
+            }
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * reads a consistent snapshot of all values
+     *
+     * @return <tt>true</tt>, if a consistent snapshot was read,
+     * <tt>false</tt> otherwise (when the writer was updating the values all
+     * the time)
+     */
+    public boolean read() {
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            long sequence = buffer.getLong(SEQUENCE_OFFSET);
+            if ((sequence & 1) != 0) {
+                // the writer is updating the values
+                Thread.yield();
+                continue;
+            }
+            int stateOrdinal = buffer.getInt(STATE_OFFSET);
+            long tmpByteCount = buffer.getLong(BYTE_COUNT_OFFSET);
+            long tmpCopiedBytes = buffer.getLong(COPIED_BYTES_OFFSET);
+            long tmpFileCount = buffer.getLong(FILE_COUNT_OFFSET);
+            long tmpCopiedFiles = buffer.getLong(COPIED_FILES_OFFSET);
+            long tmpBandwidth = buffer.getLong(BANDWIDTH_OFFSET);
+            long tmpRemainingTime = buffer.getLong(REMAINING_TIME_OFFSET);
+            long tmpCurrentFile = buffer.getLong(CURRENT_FILE_OFFSET);
+            long tmpUpdateTime = buffer.getLong(UPDATE_TIME_OFFSET);
+            if (buffer.getLong(SEQUENCE_OFFSET) != sequence) {
+                // the values changed while we read them
+                continue;
+            }
+            FileCopier.State[] states = FileCopier.State.values();
+            if ((stateOrdinal < 0) || (stateOrdinal >= states.length)) {
+                return false;
+            }
+            state = states[stateOrdinal];
+            byteCount = tmpByteCount;
+            copiedBytes = tmpCopiedBytes;
+            fileCount = tmpFileCount;
+            copiedFiles = tmpCopiedFiles;
+            bandwidth = tmpBandwidth;
+            remainingTime = tmpRemainingTime;
+            currentFile = tmpCurrentFile;
+            updateTime = tmpUpdateTime;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * returns the state of the copier
+     *
+     * @return the state of the copier or <tt>null</tt>, if no snapshot was
+     * read yet
+     */
+    public FileCopier.State getState() {
+        return state;
+    }
+
+    /**
+     * returns the byte count of all source files
+     *
+     * @return the byte count of all source files
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * returns the sum of all bytes copied so far
+     *
+     * @return the sum of all bytes copied so far
+     */
+    public long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    /**
+     * returns the number of all source files and directories
+     *
+     * @return the number of all source files and directories
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * returns the number of source files and directories copied so far
+     *
+     * @return the number of source files and directories copied so far
+     */
+    public long getCopiedFiles() {
+        return copiedFiles;
+    }
+
+    /**
+     * returns the bandwidth of the copy operation
+     *
+     * @return the bandwidth of the copy operation (in byte/s)
+     */
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * returns the estimated remaining time
+     *
+     * @return the estimated remaining time (in ms) or <tt>-1</tt>, if the
+     * remaining time is unknown
+     */
+    public long getRemainingTime() {
+        return remainingTime;
+    }
+
+    /**
+     * returns the index of the file that is currently copied
+     *
+     * @return the index of the file that is currently copied (starting at 1)
+     * or <tt>0</tt>, if no file is copied
+     */
+    public long getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * returns the time of the last update
+     *
+     * @return the time of the last update (in ms since the epoch)
+     */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    @Override
+    public String toString() {
+        return "state=" + state + " bytes=" + copiedBytes + '/' + byteCount
+                + " files=" + copiedFiles + '/' + fileCount
+                + " current=" + currentFile + " bandwidth=" + bandwidth
+                + " remaining=" + remainingTime;
+    }
+
+    /**
+     * Prints the values of a stats file. If an interval is given, the values
+     * are printed repeatedly until the copy operation ends.
+     *
+     * @param args the stats file and an optional interval (in ms)
+     * @throws Exception if an exception occurs
+     */
+    public static void main(String[] args) throws Exception {
+        if ((args.length < 1) || (args.length > 2)) {
+            System.err.println("usage: java " + StatsFileReader.class.getName()
+                    + " <stats file> [interval in ms]");
+            System.exit(1);
+        }
+        long interval = (args.length == 2) ? Long.parseLong(args[1]) : 0;
+        StatsFileReader reader = new StatsFileReader(new File(args[0]));
+        try {
+            while (true) {
+                if (reader.read()) {
+                    System.out.println(reader);
+                } else {
+                    System.err.println("could not read a consistent snapshot");
+                }
+                if ((interval <= 0)
+                        || (reader.getState() == FileCopier.State.END)) {
+                    break;
+                }
+                Thread.sleep(interval);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
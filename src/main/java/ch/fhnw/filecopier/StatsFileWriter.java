@@ -0,0 +1,150 @@
+/*
+ * StatsFileWriter.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the counters of a {@link FileCopier} into a memory-mapped stats
+ * file (see {@link StatsFileReader} for the layout). The counters are sampled
+ * periodically by a separate thread, so that the copying threads never touch
+ * the stats file. Every update first makes the sequence number odd, then
+ * writes the values and finally makes the sequence number even again. These
+ * are plain stores without ordering guarantees, see {@link StatsFileReader}
+ * for the resulting limits of consistency.
+ */
+class StatsFileWriter implements Closeable {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(StatsFileWriter.class.getName());
+    private final FileCopier fileCopier;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final ScheduledExecutorService executor;
+    private long sequence;
+
+    /**
+     * creates a new StatsFileWriter and starts publishing
+     *
+     * @param statsFile the stats file
+     * @param fileCopier the copier whose counters are published
+     * @param interval the interval between updates (in ms)
+     * @throws IOException if the stats file can not be created
+     */
+    public StatsFileWriter(File statsFile, FileCopier fileCopier,
+            long interval) throws IOException {
+        this.fileCopier = fileCopier;
+        randomAccessFile = new RandomAccessFile(statsFile, "rw");
+        try {
+            randomAccessFile.setLength(StatsFileReader.SIZE);
+            buffer = randomAccessFile.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, StatsFileReader.SIZE);
+        } catch (IOException ex) {
+            randomAccessFile.close();
+            throw ex;
+        }
+        // a previous copy operation may have left an odd sequence number
+        sequence = buffer.getLong(StatsFileReader.SEQUENCE_OFFSET) & ~1L;
+        buffer.putInt(0, StatsFileReader.MAGIC);
+        buffer.putInt(4, StatsFileReader.VERSION);
+        publish();
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(
+                                runnable, "FileCopier stats file writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    publish();
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.WARNING,
+                            "could not update stats file", ex);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stops publishing, publishes the final values and closes the stats file
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            publish();
+            buffer.force();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private synchronized void publish() {
+        FileCopier.State state = fileCopier.getState();
+        long copiedFiles = fileCopier.getCopiedFiles();
+        long fileCount = fileCopier.getFileCount();
+        long currentFile = ((state == FileCopier.State.COPYING)
+                && (copiedFiles < fileCount)) ? copiedFiles + 1 : 0;
+        long bandwidth = (long) Math.max(0,
+                fileCopier.getThroughputEstimator().getBandwidth());
+
+        buffer.putLong(StatsFileReader.SEQUENCE_OFFSET, ++sequence);
+        buffer.putInt(StatsFileReader.STATE_OFFSET, state.ordinal());
+        buffer.putLong(StatsFileReader.BYTE_COUNT_OFFSET,
+                fileCopier.getByteCount());
+        buffer.putLong(StatsFileReader.COPIED_BYTES_OFFSET,
+                fileCopier.getCopiedBytes());
+        buffer.putLong(StatsFileReader.FILE_COUNT_OFFSET, fileCount);
+        buffer.putLong(StatsFileReader.COPIED_FILES_OFFSET, copiedFiles);
+        buffer.putLong(StatsFileReader.BANDWIDTH_OFFSET, bandwidth);
+        buffer.putLong(StatsFileReader.REMAINING_TIME_OFFSET,
+                fileCopier.getRemainingTime());
+        buffer.putLong(StatsFileReader.CURRENT_FILE_OFFSET, currentFile);
+        buffer.putLong(StatsFileReader.UPDATE_TIME_OFFSET,
+                System.currentTimeMillis());
+        buffer.putLong(StatsFileReader.SEQUENCE_OFFSET, ++sequence);
+    }
+}
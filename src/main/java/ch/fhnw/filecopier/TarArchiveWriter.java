@@ -0,0 +1,278 @@
+/*
+ * TarArchiveWriter.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Writes tar archives in the POSIX ustar format. Names that do not fit into
+ * the ustar header and files of 8 GiB and more are described by pax extended
+ * headers. Entry data is transferred directly from the source channels, which
+ * avoids copying it through the Java heap when the archive is written to
+ * file channels. The archive is written to several channels at once.
+ */
+class TarArchiveWriter implements Closeable {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_SIZE = 077777777777L; // 11 octal digits
+    private static final int FILE_MODE = 0644;
+    private static final int EXECUTABLE_MODE = 0755;
+    private static final byte FILE_TYPE = '0';
+    private static final byte DIRECTORY_TYPE = '5';
+    private static final byte PAX_TYPE = 'x';
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 65536;
+    private final WritableByteChannel[] channels;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private String currentName;
+    private long currentSize;
+    private long currentWritten;
+
+    /**
+     * creates a new TarArchiveWriter
+     *
+     * @param channels the channels to write the archive to
+     */
+    public TarArchiveWriter(WritableByteChannel... channels) {
+        this.channels = channels;
+    }
+
+    /**
+     * Writes the header of a file entry. Afterwards exactly <tt>size</tt>
+     * bytes of entry data must be written before the entry is closed.
+     *
+     * @param name the name of the entry
+     * @param size the size of the file
+     * @param time the modification time of the file in ms since the epoch
+     * @param executable if <tt>true</tt>, the file is executable
+     * @throws IOException if an I/O exception occurs
+     */
+    public void putEntry(String name, long size, long time, boolean executable)
+            throws IOException {
+        putHeader(name, size, time,
+                executable ? EXECUTABLE_MODE : FILE_MODE, FILE_TYPE);
+        currentName = name;
+        currentSize = size;
+        currentWritten = 0;
+    }
+
+    /**
+     * writes a directory entry
+     *
+     * @param name the name of the directory, ending with "/"
+     * @param time the modification time of the directory in ms since the
+     * epoch
+     * @throws IOException if an I/O exception occurs
+     */
+    public void putDirectory(String name, long time) throws IOException {
+        putHeader(name, 0, time, EXECUTABLE_MODE, DIRECTORY_TYPE);
+    }
+
+    private void putHeader(String name, long size, long time, int mode,
+            byte type) throws IOException {
+        if (currentName != null) {
+            throw new IOException(
+                    "entry \"" + currentName + "\" was not closed");
+        }
+        byte[] nameBytes = name.getBytes(UTF8);
+        StringBuilder paxRecords = new StringBuilder();
+        if ((nameBytes.length > NAME_LENGTH) || !isAscii(nameBytes)) {
+            appendPaxRecord(paxRecords, "path", name);
+        }
+        if (size > MAX_SIZE) {
+            appendPaxRecord(paxRecords, "size", String.valueOf(size));
+        }
+        if (paxRecords.length() > 0) {
+            byte[] paxData = paxRecords.toString().getBytes(UTF8);
+            writeHeader(("PaxHeaders/" + name).getBytes(UTF8),
+                    paxData.length, time, FILE_MODE, PAX_TYPE);
+            write(ByteBuffer.wrap(paxData));
+            pad(paxData.length);
+        }
+        writeHeader(nameBytes, Math.min(size, MAX_SIZE), time, mode, type);
+    }
+
+    /**
+     * transfers data of the current entry from another channel
+     *
+     * @param source the channel to read the data from
+     * @param position the position of the data in the source channel
+     * @param count the number of bytes to transfer
+     * @throws IOException if an I/O exception occurs
+     */
+    public void transferFrom(FileChannel source, long position, long count)
+            throws IOException {
+        flush();
+        for (WritableByteChannel channel : channels) {
+            long transferred = 0;
+            while (transferred < count) {
+                long tmpTransferred = source.transferTo(position + transferred,
+                        count - transferred, channel);
+                if (tmpTransferred <= 0) {
+                    throw new IOException("could not transfer data");
+                }
+                transferred += tmpTransferred;
+            }
+        }
+        currentWritten += count;
+    }
+
+    /**
+     * closes the current entry
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void closeEntry() throws IOException {
+        if (currentWritten != currentSize) {
+            throw new IOException("invalid size of entry \"" + currentName
+                    + "\": expected " + currentSize + " byte, but got "
+                    + currentWritten + " byte");
+        }
+        pad(currentSize);
+        currentName = null;
+    }
+
+    /**
+     * writes the end of the archive and closes all channels
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // the archive ends with two empty blocks
+            write(ByteBuffer.allocate(2 * BLOCK_SIZE));
+            flush();
+        } finally {
+            abort();
+        }
+    }
+
+    /**
+     * closes all channels without writing the end of the archive, e.g. after a
+     * failed transfer
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void abort() throws IOException {
+        for (WritableByteChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    private void writeHeader(byte[] name, long size, long time, int mode,
+            byte type) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0,
+                Math.min(name.length, NAME_LENGTH));
+        putOctal(header, 100, 8, mode);
+        putOctal(header, 108, 8, 0); // uid
+        putOctal(header, 116, 8, 0); // gid
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, Math.max(0, time / 1000));
+        header[156] = type;
+        System.arraycopy("ustar\u000000".getBytes(UTF8), 0, header, 257, 8);
+
+        // the checksum is computed with spaces in the checksum field
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        write(ByteBuffer.wrap(header));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length,
+            long value) {
+        // the value is padded with zeros and terminated by NUL
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = i - (digits - octal.length());
+            header[offset + i] =
+                    (byte) ((index < 0) ? '0' : octal.charAt(index));
+        }
+        header[offset + digits] = 0;
+    }
+
+    private static void appendPaxRecord(StringBuilder records, String key,
+            String value) {
+        // the length of a record includes the length field itself
+        int length = key.length() + value.getBytes(UTF8).length + 3;
+        int digits = String.valueOf(length).length();
+        if (String.valueOf(length + digits).length() > digits) {
+            digits++;
+        }
+        records.append(length + digits).append(' ').append(key).append('=')
+                .append(value).append('\n');
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void pad(long size) throws IOException {
+        int remainder = (int) (size % BLOCK_SIZE);
+        if (remainder > 0) {
+            write(ByteBuffer.allocate(BLOCK_SIZE - remainder));
+        }
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        if (data.remaining() > buffer.remaining()) {
+            flush();
+        }
+        if (data.remaining() > buffer.capacity()) {
+            // large data bypasses the buffer
+            for (WritableByteChannel channel : channels) {
+                ByteBuffer duplicate = data.duplicate();
+                while (duplicate.hasRemaining()) {
+                    channel.write(duplicate);
+                }
+            }
+        } else {
+            buffer.put(data);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        for (WritableByteChannel channel : channels) {
+            ByteBuffer duplicate = buffer.duplicate();
+            while (duplicate.hasRemaining()) {
+                channel.write(duplicate);
+            }
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * ThroughputEstimator.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the throughput and the remaining time of a copy operation from
+ * samples of its progress. The bandwidth is smoothed with an exponentially
+ * weighted moving average (EWMA) and also measured over a sliding window.
+ * For the remaining time, the duration of every sample interval is modeled as
+ * a fixed overhead per file plus a cost per byte. Both are fitted with least
+ * squares to the recent samples, older samples fade out exponentially. This
+ * way the estimate stays accurate when the copy operation switches between
+ * many small files and a few large ones.
+ * <p>
+ * All times are nanosecond timestamps, like the ones of
+ * {@link System#nanoTime()}. This class is thread-safe.
+ */
+public class ThroughputEstimator {
+
+    /**
+     * the default time constant of the EWMA bandwidth (in ms)
+     */
+    public static final long DEFAULT_TIME_CONSTANT = 5000;
+    /**
+     * the default length of the bandwidth window (in ms)
+     */
+    public static final long DEFAULT_WINDOW = 10000;
+    // samples closer than this are ignored, they are mostly noise
+    private static final long MIN_SAMPLE_INTERVAL =
+            TimeUnit.MILLISECONDS.toNanos(50);
+    // the cost model should not follow every short hiccup
+    private static final int MODEL_TIME_CONSTANTS = 6;
+    private final long timeConstant;
+    private final long window;
+    private final ArrayDeque<long[]> windowSamples = new ArrayDeque<long[]>();
+    private long lastTime;
+    private long lastBytes;
+    private long lastFiles;
+    private boolean started;
+    private double bandwidth; // byte/ns
+    private boolean bandwidthKnown;
+    // exponentially decayed sums for the least squares fit of
+    // time = fileOverhead * files + byteCost * bytes
+    private double sumFilesFiles;
+    private double sumFilesBytes;
+    private double sumBytesBytes;
+    private double sumTimeFiles;
+    private double sumTimeBytes;
+    private double fileOverhead; // ns
+    private double byteCost; // ns
+    private boolean modelKnown;
+
+    /**
+     * creates a new ThroughputEstimator with the default time constant and
+     * window
+     */
+    public ThroughputEstimator() {
+        this(DEFAULT_TIME_CONSTANT, DEFAULT_WINDOW);
+    }
+
+    /**
+     * creates a new ThroughputEstimator
+     *
+     * @param timeConstant the time constant of the EWMA bandwidth (in ms)
+     * @param window the length of the bandwidth window (in ms)
+     */
+    public ThroughputEstimator(long timeConstant, long window) {
+        if ((timeConstant <= 0) || (window <= 0)) {
+            throw new IllegalArgumentException(
+                    "time constant and window must be positive");
+        }
+        this.timeConstant = TimeUnit.MILLISECONDS.toNanos(timeConstant);
+        this.window = TimeUnit.MILLISECONDS.toNanos(window);
+    }
+
+    /**
+     * forgets all samples and starts a new estimation
+     *
+     * @param time the start time (in ns)
+     */
+    public synchronized void reset(long time) {
+        windowSamples.clear();
+        windowSamples.add(new long[]{time, 0});
+        lastTime = time;
+        lastBytes = 0;
+        lastFiles = 0;
+        started = true;
+        bandwidth = 0;
+        bandwidthKnown = false;
+        sumFilesFiles = 0;
+        sumFilesBytes = 0;
+        sumBytesBytes = 0;
+        sumTimeFiles = 0;
+        sumTimeBytes = 0;
+        fileOverhead = 0;
+        byteCost = 0;
+        modelKnown = false;
+    }
+
+    /**
+     * adds a sample of the progress
+     *
+     * @param time the time of the sample (in ns)
+     * @param bytes the number of bytes copied since the start
+     * @param files the number of files copied since the start
+     */
+    public synchronized void update(long time, long bytes, long files) {
+        if (!started) {
+            reset(time);
+        }
+        long duration = time - lastTime;
+        long deltaBytes = bytes - lastBytes;
+        long deltaFiles = files - lastFiles;
+        if ((duration < MIN_SAMPLE_INTERVAL)
+                || (deltaBytes < 0) || (deltaFiles < 0)) {
+            // too close or older than the last sample
+            return;
+        }
+        lastTime = time;
+        lastBytes = bytes;
+        lastFiles = files;
+
+        // EWMA bandwidth, weighted by the duration of the interval
+        double rate = (double) deltaBytes / duration;
+        if (bandwidthKnown) {
+            double alpha = 1 - Math.exp(-(double) duration / timeConstant);
+            bandwidth += alpha * (rate - bandwidth);
+        } else {
+            bandwidth = rate;
+            bandwidthKnown = true;
+        }
+
+        // windowed bandwidth
+        windowSamples.add(new long[]{time, bytes});
+        while ((windowSamples.size() > 2)
+                && (time - windowSamples.peekFirst()[0] > window)) {
+            windowSamples.removeFirst();
+        }
+
+        // cost model
+        double decay = Math.exp(
+                -(double) duration / (MODEL_TIME_CONSTANTS * timeConstant));
+        sumFilesFiles = decay * sumFilesFiles + (double) deltaFiles * deltaFiles;
+        sumFilesBytes = decay * sumFilesBytes + (double) deltaFiles * deltaBytes;
+        sumBytesBytes = decay * sumBytesBytes + (double) deltaBytes * deltaBytes;
+        sumTimeFiles = decay * sumTimeFiles + (double) duration * deltaFiles;
+        sumTimeBytes = decay * sumTimeBytes + (double) duration * deltaBytes;
+        fitModel();
+    }
+
+    private void fitModel() {
+        double determinant = sumFilesFiles * sumBytesBytes
+                - sumFilesBytes * sumFilesBytes;
+        if ((sumFilesFiles > 0) && (sumBytesBytes > 0)
+                && (determinant > 1e-6 * sumFilesFiles * sumBytesBytes)) {
+            fileOverhead = (sumTimeFiles * sumBytesBytes
+                    - sumTimeBytes * sumFilesBytes) / determinant;
+            byteCost = (sumTimeBytes * sumFilesFiles
+                    - sumTimeFiles * sumFilesBytes) / determinant;
+            // negative costs make no sense, fit the other term alone
+            if (fileOverhead < 0) {
+                fileOverhead = 0;
+                byteCost = sumTimeBytes / sumBytesBytes;
+            } else if (byteCost < 0) {
+                byteCost = 0;
+                fileOverhead = sumTimeFiles / sumFilesFiles;
+            }
+            modelKnown = true;
+        } else if (sumBytesBytes > 0) {
+            // file and byte counts are (nearly) proportional and can not be
+            // told apart, the bytes alone describe the time
+            fileOverhead = 0;
+            byteCost = sumTimeBytes / sumBytesBytes;
+            modelKnown = true;
+        } else if (sumFilesFiles > 0) {
+            // only empty files so far
+            fileOverhead = sumTimeFiles / sumFilesFiles;
+            byteCost = 0;
+            modelKnown = true;
+        }
+    }
+
+    /**
+     * returns the EWMA bandwidth
+     *
+     * @return the EWMA bandwidth (in byte/s)
+     */
+    public synchronized double getBandwidth() {
+        return bandwidth * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * returns the bandwidth within the window
+     *
+     * @return the bandwidth within the window (in byte/s)
+     */
+    public synchronized double getWindowBandwidth() {
+        if (windowSamples.size() < 2) {
+            return 0;
+        }
+        long[] first = windowSamples.peekFirst();
+        long[] last = windowSamples.peekLast();
+        return (double) (last[1] - first[1]) / (last[0] - first[0])
+                * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * returns the estimated overhead per file
+     *
+     * @return the estimated overhead per file (in ns)
+     */
+    public synchronized double getFileOverhead() {
+        return fileOverhead;
+    }
+
+    /**
+     * returns the estimated cost per byte
+     *
+     * @return the estimated cost per byte (in ns)
+     */
+    public synchronized double getByteCost() {
+        return byteCost;
+    }
+
+    /**
+     * estimates the time needed for the rest of the copy operation
+     *
+     * @param remainingBytes the number of bytes that are not yet copied
+     * @param remainingFiles the number of files that are not yet copied
+     * @return the estimated remaining time (in ms) or <tt>-1</tt>, if there
+     * are not enough samples for an estimation
+     */
+    public synchronized long getRemainingTime(
+            long remainingBytes, long remainingFiles) {
+        double remainingTime; // ns
+        if ((remainingBytes <= 0) && (remainingFiles <= 0)) {
+            return 0;
+        } else if (modelKnown) {
+            remainingTime = fileOverhead * Math.max(0, remainingFiles)
+                    + byteCost * Math.max(0, remainingBytes);
+        } else if (bandwidthKnown && (bandwidth > 0)) {
+            remainingTime = Math.max(0, remainingBytes) / bandwidth;
+        } else {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis((long) remainingTime);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * VerificationReport.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.text.NumberFormat;
+
+/**
+ * A summary of the verification of all destinations of a copy operation.
+ */
+public class VerificationReport {
+
+    private int completeFiles;
+    private int sampledFiles;
+    private int minimumSamples = Integer.MAX_VALUE;
+    private int mismatches;
+    private long comparedBytes;
+    private long destinationBytes;
+
+    /**
+     * returns the number of destination files that were compared completely
+     * @return the number of destination files that were compared completely
+     */
+    public synchronized int getCompleteFiles() {
+        return completeFiles;
+    }
+
+    /**
+     * returns the number of destination files that were compared by sampling
+     * @return the number of destination files that were compared by sampling
+     */
+    public synchronized int getSampledFiles() {
+        return sampledFiles;
+    }
+
+    /**
+     * returns the number of destination files that differ from their source
+     * @return the number of destination files that differ from their source
+     */
+    public synchronized int getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * returns the number of destination bytes that were compared
+     * @return the number of destination bytes that were compared
+     */
+    public synchronized long getComparedBytes() {
+        return comparedBytes;
+    }
+
+    /**
+     * returns the size of all verified destination files
+     * @return the size of all verified destination files
+     */
+    public synchronized long getDestinationBytes() {
+        return destinationBytes;
+    }
+
+    /**
+     * Returns the probability that a corruption of the given fraction of the
+     * blocks of a file would have been detected. Completely compared files
+     * always detect a corruption, for sampled files the probability depends
+     * on the smallest number of blocks compared in a single file.
+     * @param corruptedFraction the fraction of corrupted blocks of a file,
+     * e.g. <tt>0.01</tt> for one percent
+     * @return the detection probability
+     */
+    public synchronized double getDetectionProbability(
+            double corruptedFraction) {
+        if (minimumSamples == Integer.MAX_VALUE) {
+            return 1;
+        }
+        return 1 - Math.pow(1 - corruptedFraction, minimumSamples);
+    }
+
+    synchronized void addCompleteFile(long length, boolean match) {
+        completeFiles++;
+        comparedBytes += length;
+        destinationBytes += length;
+        if (!match) {
+            mismatches++;
+        }
+    }
+
+    synchronized void addSampledFile(
+            long length, int samples, long compared, boolean match) {
+        sampledFiles++;
+        if (samples > 0) {
+            minimumSamples = Math.min(minimumSamples, samples);
+        }
+        comparedBytes += compared;
+        destinationBytes += length;
+        if (!match) {
+            mismatches++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        NumberFormat numberFormat = NumberFormat.getInstance();
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("verified ");
+        stringBuilder.append(completeFiles + sampledFiles);
+        stringBuilder.append(" destination files (");
+        stringBuilder.append(completeFiles);
+        stringBuilder.append(" completely, ");
+        stringBuilder.append(sampledFiles);
+        stringBuilder.append(" sampled), compared ");
+        stringBuilder.append(numberFormat.format(comparedBytes));
+        stringBuilder.append(" of ");
+        stringBuilder.append(numberFormat.format(destinationBytes));
+        stringBuilder.append(" byte, ");
+        stringBuilder.append(mismatches);
+        stringBuilder.append(" mismatches");
+        if (minimumSamples != Integer.MAX_VALUE) {
+            NumberFormat percentFormat = NumberFormat.getPercentInstance();
+            percentFormat.setMaximumFractionDigits(4);
+            stringBuilder.append(", at least ");
+            stringBuilder.append(minimumSamples);
+            stringBuilder.append(" samples per file detect a corruption of 1%"
+                    + " of a file with a probability of ");
+            stringBuilder.append(
+                    percentFormat.format(getDetectionProbability(0.01)));
+        }
+        return stringBuilder.toString();
+    }
+}
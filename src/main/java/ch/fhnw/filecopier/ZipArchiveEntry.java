@@ -0,0 +1,179 @@
+/*
+ * ZipArchiveEntry.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.util.Calendar;
+
+/**
+ * An entry of a zip archive. In contrast to {@link java.util.zip.ZipEntry} the
+ * checksum and the sizes of an entry must be known before it is written, so
+ * that no data descriptors are necessary.
+ */
+class ZipArchiveEntry {
+
+    /**
+     * the compression method for uncompressed entries
+     */
+    public static final int STORED = 0;
+    /**
+     * the compression method for deflated entries
+     */
+    public static final int DEFLATED = 8;
+    private final String name;
+    private final long time;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+    private long offset;
+
+    /**
+     * creates a new ZipArchiveEntry
+     *
+     * @param name the name of the entry
+     * @param time the modification time of the entry in ms since the epoch
+     * @param method the compression method of the entry
+     * @param crc the CRC-32 checksum of the uncompressed data
+     * @param size the size of the uncompressed data
+     * @param compressedSize the size of the compressed data
+     */
+    public ZipArchiveEntry(String name, long time, int method, long crc,
+            long size, long compressedSize) {
+        this.name = name;
+        this.time = time;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.compressedSize = compressedSize;
+    }
+
+    /**
+     * returns the name of the entry
+     *
+     * @return the name of the entry
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * returns the modification time of the entry
+     *
+     * @return the modification time of the entry in ms since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * returns the compression method of the entry
+     *
+     * @return the compression method of the entry
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * returns the CRC-32 checksum of the uncompressed data
+     *
+     * @return the CRC-32 checksum of the uncompressed data
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * returns the size of the uncompressed data
+     *
+     * @return the size of the uncompressed data
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * returns the size of the compressed data
+     *
+     * @return the size of the compressed data
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * returns the offset of the local header within the archive
+     *
+     * @return the offset of the local header within the archive
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * sets the offset of the local header within the archive
+     *
+     * @param offset the offset of the local header within the archive
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * converts a time into the MS-DOS format used by zip archives, which has
+     * a resolution of two seconds
+     *
+     * @param time the time in ms since the epoch
+     * @return the time in MS-DOS format
+     */
+    public static long toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            // the earliest date that can be represented
+            return (1 << 21) | (1 << 16);
+        }
+        return (((year - 1980) << 25)
+                | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * converts a time in the MS-DOS format used by zip archives
+     *
+     * @param dosTime the time in MS-DOS format
+     * @return the time in ms since the epoch
+     */
+    public static long fromDosTime(long dosTime) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set((int) ((dosTime >> 25) & 0x7F) + 1980,
+                (int) ((dosTime >> 21) & 0x0F) - 1,
+                (int) ((dosTime >> 16) & 0x1F),
+                (int) ((dosTime >> 11) & 0x1F),
+                (int) ((dosTime >> 5) & 0x3F),
+                (int) ((dosTime << 1) & 0x3E));
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * ZipArchiveReader.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of an existing zip archive (including ZIP64
+ * extensions), so that the compressed data of its entries can be copied into
+ * a new archive without decompressing it. Encrypted entries are ignored.
+ */
+class ZipArchiveReader {
+
+    private final static Logger LOGGER =
+            Logger.getLogger(ZipArchiveReader.class.getName());
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 65535;
+    private static final int ENCRYPTED_FLAG = 0x0001;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final File file;
+    private final FileChannel channel;
+    private final Map<String, ZipArchiveEntry> entries =
+            new LinkedHashMap<String, ZipArchiveEntry>();
+
+    /**
+     * creates a new ZipArchiveReader
+     *
+     * @param file the zip archive
+     * @throws IOException if an I/O exception occurs or the file is not a
+     * valid zip archive
+     */
+    public ZipArchiveReader(File file) throws IOException {
+        this.file = file;
+        channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            readCentralDirectory();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * returns all entries of the archive
+     *
+     * @return all entries of the archive in the order of the central
+     * directory
+     */
+    public Collection<ZipArchiveEntry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * returns an entry of the archive
+     *
+     * @param name the name of the entry
+     * @return the entry or <tt>null</tt>, if the archive contains no entry
+     * with this name
+     */
+    public ZipArchiveEntry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * returns the position of the compressed data of an entry
+     *
+     * @param entry the entry
+     * @return the position of the compressed data of the entry
+     * @throws IOException if an I/O exception occurs
+     */
+    public long getDataOffset(ZipArchiveEntry entry) throws IOException {
+        // the extra field of the local header may differ from the one in the
+        // central directory
+        ByteBuffer header = read(entry.getOffset(), 30);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("invalid local header of entry \""
+                    + entry.getName() + "\" in \"" + file + '"');
+        }
+        return entry.getOffset() + 30 + (header.getShort(26) & 0xFFFF)
+                + (header.getShort(28) & 0xFFFF);
+    }
+
+    /**
+     * returns the channel of the archive
+     *
+     * @return the channel of the archive
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * closes the archive
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        // the end record is followed by a comment of variable length
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, END_LENGTH + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = read(size - tailLength, tailLength);
+        int endPosition = tailLength - END_LENGTH;
+        while ((endPosition >= 0)
+                && (tail.getInt(endPosition) != END_SIGNATURE)) {
+            endPosition--;
+        }
+        if (endPosition < 0) {
+            throw new ZipException("\"" + file + "\" is not a zip archive");
+        }
+        long count = tail.getShort(endPosition + 10) & 0xFFFF;
+        long directorySize = tail.getInt(endPosition + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(endPosition + 16) & ZIP64_MAGIC;
+
+        // a ZIP64 end locator directly precedes the end record
+        long endOffset = size - tailLength + endPosition;
+        if (endOffset >= 20) {
+            ByteBuffer locator = read(endOffset - 20, 20);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                ByteBuffer zip64End = read(locator.getLong(8), 56);
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException(
+                            "invalid ZIP64 end record in \"" + file + '"');
+                }
+                count = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+            }
+        }
+        if (directorySize > Integer.MAX_VALUE) {
+            throw new ZipException(
+                    "central directory of \"" + file + "\" is too large");
+        }
+
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if ((position + 46 > directorySize)
+                    || (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE)) {
+                throw new ZipException(
+                        "invalid central directory in \"" + file + '"');
+            }
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long dosTime = directory.getInt(position + 12) & ZIP64_MAGIC;
+            long crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+            long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+            long entrySize = directory.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long offset = directory.getInt(position + 42) & ZIP64_MAGIC;
+            byte[] name = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(name);
+
+            // the ZIP64 extra field only contains the values that did not fit
+            // into the header
+            int extraPosition = position + 46 + nameLength;
+            int extraEnd = extraPosition + extraLength;
+            while (extraPosition + 4 <= extraEnd) {
+                int id = directory.getShort(extraPosition) & 0xFFFF;
+                int length = directory.getShort(extraPosition + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA_ID) {
+                    int valuePosition = extraPosition + 4;
+                    if (entrySize == ZIP64_MAGIC) {
+                        entrySize = directory.getLong(valuePosition);
+                        valuePosition += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = directory.getLong(valuePosition);
+                        valuePosition += 8;
+                    }
+                    if (offset == ZIP64_MAGIC) {
+                        offset = directory.getLong(valuePosition);
+                    }
+                }
+                extraPosition += 4 + length;
+            }
+            position += 46 + nameLength + extraLength + commentLength;
+
+            String entryName = new String(name, UTF8);
+            if ((flags & ENCRYPTED_FLAG) != 0) {
+                LOGGER.log(Level.WARNING,
+                        "ignoring encrypted entry \"{0}\" in \"{1}\"",
+                        new Object[]{entryName, file});
+                continue;
+            }
+            ZipArchiveEntry entry = new ZipArchiveEntry(entryName,
+                    ZipArchiveEntry.fromDosTime(dosTime), method, crc,
+                    entrySize, compressedSize);
+            entry.setOffset(offset);
+            entries.put(entryName, entry);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException(
+                        "unexpected end of \"" + file + '"');
+            }
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * ZipArchiveWriter.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.ZipException;
+
+/**
+ * Writes zip archives whose entries were already compressed. Because the
+ * checksum and sizes of every entry are known in advance, the local headers
+ * contain all information and no data descriptors are written. ZIP64
+ * extensions are used for entries and archives that exceed the limits of the
+ * original zip format.
+ * <p>
+ * The archive is written to several channels at once. Entry data can be
+ * transferred directly from other channels (e.g. stored source files) without
+ * passing through the Java heap. The central directory is collected in a
+ * temporary file, so that memory usage does not depend on the number of
+ * entries. Entry names must be unique, the writer does not check this.
+ */
+class ZipArchiveWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    // general purpose flag: file names are encoded in UTF-8
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 65536;
+    private final FileChannel[] channels;
+    private final ByteBuffer buffer = allocateDirect();
+    private final File centralDirectoryFile;
+    private final FileChannel centralDirectory;
+    private final ByteBuffer centralDirectoryBuffer = allocateDirect();
+    private long offset;
+    private long entryCount;
+    private ZipArchiveEntry currentEntry;
+    private long currentWritten;
+
+    /**
+     * creates a new ZipArchiveWriter
+     *
+     * @param channels the channels to write the archive to
+     * @throws IOException if an I/O exception occurs
+     */
+    public ZipArchiveWriter(FileChannel... channels) throws IOException {
+        this.channels = channels;
+        centralDirectoryFile =
+                File.createTempFile("filecopier", ".zipdirectory");
+        try {
+            centralDirectory = new RandomAccessFile(
+                    centralDirectoryFile, "rw").getChannel();
+        } catch (IOException ex) {
+            centralDirectoryFile.delete();
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes the local header of an entry. Afterwards exactly
+     * {@link ZipArchiveEntry#getCompressedSize()} bytes of entry data must be
+     * written before the entry is closed.
+     *
+     * @param entry the entry
+     * @throws IOException if an I/O exception occurs
+     */
+    public void putEntry(ZipArchiveEntry entry) throws IOException {
+        if (currentEntry != null) {
+            throw new ZipException("entry \"" + currentEntry.getName()
+                    + "\" was not closed");
+        }
+        entry.setOffset(offset);
+        byte[] name = entry.getName().getBytes(UTF8);
+        boolean zip64 = (entry.getSize() >= ZIP64_MAGIC)
+                || (entry.getCompressedSize() >= ZIP64_MAGIC);
+        ByteBuffer header = allocate(30 + name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.getMethod());
+        header.putInt((int) ZipArchiveEntry.toDosTime(entry.getTime()));
+        header.putInt((int) entry.getCrc());
+        if (zip64) {
+            header.putInt((int) ZIP64_MAGIC);
+            header.putInt((int) ZIP64_MAGIC);
+        } else {
+            header.putInt((int) entry.getCompressedSize());
+            header.putInt((int) entry.getSize());
+        }
+        header.putShort((short) name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(entry.getSize());
+            header.putLong(entry.getCompressedSize());
+        }
+        header.flip();
+        write(header);
+        currentEntry = entry;
+        currentWritten = 0;
+    }
+
+    /**
+     * writes data of the current entry
+     *
+     * @param data the array that contains the data
+     * @param off the start offset of the data in the array
+     * @param length the number of bytes to write
+     * @throws IOException if an I/O exception occurs
+     */
+    public void write(byte[] data, int off, int length) throws IOException {
+        write(ByteBuffer.wrap(data, off, length));
+        currentWritten += length;
+    }
+
+    /**
+     * transfers data of the current entry from another channel
+     *
+     * @param source the channel to read the data from
+     * @param position the position of the data in the source channel
+     * @param count the number of bytes to transfer
+     * @throws IOException if an I/O exception occurs
+     */
+    public void transferFrom(FileChannel source, long position, long count)
+            throws IOException {
+        transfer(source, position, count);
+        currentWritten += count;
+    }
+
+    /**
+     * closes the current entry
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void closeEntry() throws IOException {
+        if (currentWritten != currentEntry.getCompressedSize()) {
+            throw new ZipException("invalid size of entry \""
+                    + currentEntry.getName() + "\": expected "
+                    + currentEntry.getCompressedSize() + " byte, but got "
+                    + currentWritten + " byte");
+        }
+        writeCentralHeader(currentEntry);
+        entryCount++;
+        currentEntry = null;
+    }
+
+    /**
+     * writes the central directory and closes the archive
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // copy the collected central directory into the archive
+            centralDirectoryBuffer.flip();
+            while (centralDirectoryBuffer.hasRemaining()) {
+                centralDirectory.write(centralDirectoryBuffer);
+            }
+            long centralDirectoryOffset = offset;
+            long centralDirectorySize = centralDirectory.size();
+            transfer(centralDirectory, 0, centralDirectorySize);
+            writeEnd(centralDirectoryOffset, centralDirectorySize);
+            flush();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * closes the archive without writing the central directory, e.g. after a
+     * failed transfer
+     *
+     * @throws IOException if an I/O exception occurs
+     */
+    public void abort() throws IOException {
+        release();
+    }
+
+    private void release() throws IOException {
+        try {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+            centralDirectory.close();
+        } finally {
+            if (!centralDirectoryFile.delete()) {
+                throw new IOException("could not delete \""
+                        + centralDirectoryFile + '"');
+            }
+        }
+    }
+
+    private void writeCentralHeader(ZipArchiveEntry entry)
+            throws IOException {
+        byte[] name = entry.getName().getBytes(UTF8);
+        boolean zip64Size = entry.getSize() >= ZIP64_MAGIC;
+        boolean zip64CompressedSize = entry.getCompressedSize() >= ZIP64_MAGIC;
+        boolean zip64Offset = entry.getOffset() >= ZIP64_MAGIC;
+        int extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0)
+                + (zip64Offset ? 8 : 0);
+        if (extraLength > 0) {
+            extraLength += 4;
+        }
+        int version = (extraLength > 0) ? ZIP64_VERSION : VERSION;
+        ByteBuffer header = allocate(46 + name.length + extraLength);
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) version);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.getMethod());
+        header.putInt((int) ZipArchiveEntry.toDosTime(entry.getTime()));
+        header.putInt((int) entry.getCrc());
+        header.putInt((int) Math.min(entry.getCompressedSize(), ZIP64_MAGIC));
+        header.putInt((int) Math.min(entry.getSize(), ZIP64_MAGIC));
+        header.putShort((short) name.length);
+        header.putShort((short) extraLength);
+        header.putShort((short) 0); // comment length
+        header.putShort((short) 0); // disk number
+        header.putShort((short) 0); // internal attributes
+        header.putInt(0); // external attributes
+        header.putInt((int) Math.min(entry.getOffset(), ZIP64_MAGIC));
+        header.put(name);
+        if (extraLength > 0) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) (extraLength - 4));
+            if (zip64Size) {
+                header.putLong(entry.getSize());
+            }
+            if (zip64CompressedSize) {
+                header.putLong(entry.getCompressedSize());
+            }
+            if (zip64Offset) {
+                header.putLong(entry.getOffset());
+            }
+        }
+        header.flip();
+        if (header.remaining() > centralDirectoryBuffer.remaining()) {
+            centralDirectoryBuffer.flip();
+            while (centralDirectoryBuffer.hasRemaining()) {
+                centralDirectory.write(centralDirectoryBuffer);
+            }
+            centralDirectoryBuffer.clear();
+        }
+        centralDirectoryBuffer.put(header);
+    }
+
+    private void writeEnd(long centralDirectoryOffset,
+            long centralDirectorySize) throws IOException {
+        long count = entryCount;
+        if ((count >= ZIP64_MAGIC_COUNT)
+                || (centralDirectoryOffset >= ZIP64_MAGIC)
+                || (centralDirectorySize >= ZIP64_MAGIC)) {
+            long zip64EndOffset = offset;
+            ByteBuffer zip64End = allocate(56 + 20);
+            zip64End.putInt(ZIP64_END_SIGNATURE);
+            zip64End.putLong(44); // size of the remaining record
+            zip64End.putShort((short) ZIP64_VERSION);
+            zip64End.putShort((short) ZIP64_VERSION);
+            zip64End.putInt(0); // number of this disk
+            zip64End.putInt(0); // disk with the central directory
+            zip64End.putLong(count);
+            zip64End.putLong(count);
+            zip64End.putLong(centralDirectorySize);
+            zip64End.putLong(centralDirectoryOffset);
+            zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+            zip64End.putInt(0); // disk with the zip64 end record
+            zip64End.putLong(zip64EndOffset);
+            zip64End.putInt(1); // total number of disks
+            zip64End.flip();
+            write(zip64End);
+        }
+        ByteBuffer end = allocate(22);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0); // number of this disk
+        end.putShort((short) 0); // disk with the central directory
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        end.putShort((short) 0); // comment length
+        end.flip();
+        write(end);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static ByteBuffer allocateDirect() {
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        offset += data.remaining();
+        if (data.remaining() > buffer.remaining()) {
+            flush();
+        }
+        if (data.remaining() > buffer.capacity()) {
+            // large data bypasses the buffer
+            for (FileChannel channel : channels) {
+                ByteBuffer duplicate = data.duplicate();
+                while (duplicate.hasRemaining()) {
+                    channel.write(duplicate);
+                }
+            }
+        } else {
+            buffer.put(data);
+        }
+    }
+
+    private void transfer(FileChannel source, long position, long count)
+            throws IOException {
+        flush();
+        for (FileChannel channel : channels) {
+            long transferred = 0;
+            while (transferred < count) {
+                long tmpTransferred = source.transferTo(position + transferred,
+                        count - transferred, channel);
+                if (tmpTransferred <= 0) {
+                    throw new IOException("could not transfer data");
+                }
+                transferred += tmpTransferred;
+            }
+        }
+        offset += count;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        for (FileChannel channel : channels) {
+            ByteBuffer duplicate = buffer.duplicate();
+            while (duplicate.hasRemaining()) {
+                channel.write(duplicate);
+            }
+        }
+        buffer.clear();
+    }
+}
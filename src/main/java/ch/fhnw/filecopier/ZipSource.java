@@ -0,0 +1,58 @@
+/*
+ * ZipSource.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+
+/**
+ * A source that extracts the entries of an existing zip archive. The entries
+ * are extracted in parallel into the destinations, which must be directories.
+ * The entry names are used as paths relative to the destinations. Overwrite
+ * policies, delta updates, links and verification do not apply to entries of
+ * zip archives.
+ */
+public class ZipSource extends Source {
+
+    /**
+     * creates a new ZipSource that extracts all entries of an archive
+     * @param archive the path of the zip archive
+     */
+    public ZipSource(String archive) {
+        this(archive, ".*");
+    }
+
+    /**
+     * creates a new ZipSource
+     * @param archive the path of the zip archive
+     * @param pattern the search pattern for the entry names (directories
+     * within the archive are separated by "/")
+     */
+    public ZipSource(String archive, String pattern) {
+        super(archive, pattern, true);
+    }
+
+    /**
+     * returns the zip archive (the same as {@link #getBaseDirectory()})
+     * @return the zip archive
+     */
+    public File getArchive() {
+        return getBaseDirectory();
+    }
+}
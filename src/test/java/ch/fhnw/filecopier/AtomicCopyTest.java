@@ -0,0 +1,210 @@
+/*
+ * AtomicCopyTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for atomic destination writes
+ */
+public class AtomicCopyTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private File sourceFile;
+    private File destinationFile;
+    private File secondSourceFile;
+    private File secondDestinationFile;
+
+    /**
+     * sets up some things before a test runs
+     */
+    @Before
+    public void setUp() {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "atomicSourceDir");
+        if (!sourceDir.exists() && !sourceDir.mkdirs()) {
+            fail("could not create source dir " + sourceDir);
+        }
+        destinationDir = new File(tmpDir, "atomicDestinationDir");
+        if (!destinationDir.exists() && !destinationDir.mkdirs()) {
+            fail("could not create destination dir " + destinationDir);
+        }
+        sourceFile = new File(sourceDir, "sourceFile");
+        destinationFile = new File(destinationDir, "sourceFile");
+        secondSourceFile = new File(sourceDir, "secondSourceFile");
+        secondDestinationFile = new File(destinationDir, "secondSourceFile");
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        for (File file : new File[]{sourceFile, secondSourceFile, sourceDir,
+                    destinationFile, secondDestinationFile, destinationDir}) {
+            if (file.exists() && !file.delete()) {
+                fail("could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * test, if an existing destination is replaced and no temporary files
+     * remain
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testAtomicCopy() throws Exception {
+        int testSize = 3 * 1024 * 1024;
+        byte[] data = new byte[testSize];
+        new Random().nextBytes(data);
+        write(sourceFile, data);
+        write(destinationFile, new byte[]{1, 2, 3});
+
+        for (CopyJob.SyncPolicy syncPolicy : CopyJob.SyncPolicy.values()) {
+            CopyJob copyJob = new CopyJob(
+                    new Source[]{new Source(sourceFile.getPath())},
+                    new String[]{destinationDir.getPath()});
+            copyJob.setAtomic(true);
+            copyJob.setSyncPolicy(syncPolicy);
+            copyJob.setVerification(CopyJob.Verification.FULL);
+            fileCopier.copy(copyJob);
+
+            assertArrayEquals("destination does not match source with "
+                    + syncPolicy, data, read(destinationFile));
+            assertEquals("temporary file was not renamed with " + syncPolicy,
+                    1, destinationDir.list().length);
+        }
+    }
+
+    /**
+     * test, if a failed transfer throws an exception and never replaces the
+     * destination with an incomplete file
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testFailedTransfer() throws Exception {
+        File fullDevice = new File("/dev/full");
+        Assume.assumeTrue(fullDevice.exists());
+        byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+        write(sourceFile, data);
+        byte[] oldData = new byte[]{1, 2, 3};
+        write(destinationFile, oldData);
+
+        // every write to the temporary file fails with "no space left"
+        File temporaryFile =
+                DestinationCommitter.getTemporaryFile(destinationFile);
+        Files.createSymbolicLink(temporaryFile.toPath(), fullDevice.toPath());
+
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceFile.getPath())},
+                new String[]{destinationDir.getPath()});
+        copyJob.setAtomic(true);
+        try {
+            fileCopier.copy(copyJob);
+            fail("failed transfer was not reported");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertEquals("failed transfer was not counted",
+                1, fileCopier.getFailedCopies());
+        assertArrayEquals("destination was replaced", oldData,
+                read(destinationFile));
+        assertFalse("temporary file was not removed",
+                Files.exists(temporaryFile.toPath(),
+                LinkOption.NOFOLLOW_LINKS));
+    }
+
+    /**
+     * test, if a failed transfer also removes the temporary files of the
+     * already transferred but not yet committed files of a copy job
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testFailedJob() throws Exception {
+        File fullDevice = new File("/dev/full");
+        Assume.assumeTrue(fullDevice.exists());
+        byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+        write(sourceFile, data);
+        write(secondSourceFile, data);
+
+        // the first file is transferred, the second one fails
+        File temporaryFile =
+                DestinationCommitter.getTemporaryFile(destinationFile);
+        File secondTemporaryFile =
+                DestinationCommitter.getTemporaryFile(secondDestinationFile);
+        Files.createSymbolicLink(
+                secondTemporaryFile.toPath(), fullDevice.toPath());
+
+        CopyJob copyJob = new CopyJob(new Source[]{
+                    new Source(sourceFile.getPath()),
+                    new Source(secondSourceFile.getPath())},
+                new String[]{destinationDir.getPath()});
+        copyJob.setAtomic(true);
+        copyJob.setSyncPolicy(CopyJob.SyncPolicy.END_OF_JOB);
+        try {
+            fileCopier.copy(copyJob);
+            fail("failed transfer was not reported");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertFalse("destination was committed", destinationFile.exists());
+        assertFalse("temporary file was not removed",
+                Files.exists(temporaryFile.toPath(),
+                LinkOption.NOFOLLOW_LINKS));
+        assertFalse("temporary file was not removed",
+                Files.exists(secondTemporaryFile.toPath(),
+                LinkOption.NOFOLLOW_LINKS));
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+}
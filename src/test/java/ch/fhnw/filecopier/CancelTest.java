@@ -0,0 +1,226 @@
+/*
+ * CancelTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for pausing and cancelling a running copy operation
+ */
+public class CancelTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private File sourceFile;
+    private File destinationFile;
+
+    /**
+     * sets up some things before a test runs
+     */
+    @Before
+    public void setUp() {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "cancelSourceDir");
+        if (!sourceDir.exists() && !sourceDir.mkdirs()) {
+            fail("could not create source dir " + sourceDir);
+        }
+        destinationDir = new File(tmpDir, "cancelDestinationDir");
+        if (!destinationDir.exists() && !destinationDir.mkdirs()) {
+            fail("could not create destination dir " + destinationDir);
+        }
+        sourceFile = new File(sourceDir, "sourceFile");
+        destinationFile = new File(destinationDir, "sourceFile");
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        for (File file : new File[]{
+                    sourceFile, sourceDir, destinationFile, destinationDir}) {
+            if (file.exists() && !file.delete()) {
+                fail("could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * test, if a paused copy makes no progress until it is resumed
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testPauseAndResume() throws Exception {
+        final byte[] data = createSource();
+        // progress is sampled periodically, so the copy must take a while
+        fileCopier.setMaxBandwidth(4 * 1024 * 1024);
+        fileCopier.addPropertyChangeListener(
+                FileCopier.BYTE_COUNTER_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        if ((Long) evt.getOldValue() == 0) {
+                            fileCopier.pause();
+                        }
+                    }
+                });
+        final Exception[] exception = new Exception[1];
+        Thread copyThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    fileCopier.copy(createCopyJob());
+                } catch (Exception ex) {
+                    exception[0] = ex;
+                }
+            }
+        };
+        copyThread.start();
+
+        // wait until the copy is paused, the current slice is still finished
+        while (!fileCopier.isPaused() && copyThread.isAlive()) {
+            Thread.sleep(10);
+        }
+        assertTrue("copy was not paused", fileCopier.isPaused());
+        Thread.sleep(500);
+        long copiedBytes = fileCopier.getCopiedBytes();
+        Thread.sleep(200);
+        assertEquals("paused copy made progress",
+                copiedBytes, fileCopier.getCopiedBytes());
+        assertTrue("paused copy finished", copyThread.isAlive());
+
+        fileCopier.resume();
+        copyThread.join();
+        assertNull("resumed copy failed", exception[0]);
+        assertArrayEquals("destination does not match source",
+                data, read(destinationFile));
+    }
+
+    /**
+     * test, if a cancelled copy removes its partial destination
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testCancel() throws Exception {
+        createSource();
+        // progress is sampled periodically, so the copy must take a while
+        fileCopier.setMaxBandwidth(4 * 1024 * 1024);
+        fileCopier.addPropertyChangeListener(
+                FileCopier.BYTE_COUNTER_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        fileCopier.cancel(true);
+                    }
+                });
+        try {
+            fileCopier.copy(createCopyJob());
+            fail("cancelled copy did not throw an exception");
+        } catch (InterruptedIOException ex) {
+            // expected
+        }
+        assertTrue("copy was not cancelled early",
+                fileCopier.getCopiedBytes() < sourceFile.length());
+        assertFalse("partial destination was not removed",
+                destinationFile.exists());
+        assertEquals("cancelled copy did not end",
+                FileCopier.State.END, fileCopier.getState());
+    }
+
+    /**
+     * test, if a copy that was paused and then cancelled does not block the
+     * next copy
+     * @throws Exception if an exception occurs
+     */
+    @Test(timeout = 30000)
+    public void testPauseCancelAndCopy() throws Exception {
+        final byte[] data = createSource();
+        fileCopier.setMaxBandwidth(4 * 1024 * 1024);
+        final Exception[] exception = new Exception[1];
+        Thread copyThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    fileCopier.copy(createCopyJob());
+                } catch (Exception ex) {
+                    exception[0] = ex;
+                }
+            }
+        };
+        copyThread.start();
+        while ((fileCopier.getCopiedBytes() == 0) && copyThread.isAlive()) {
+            Thread.sleep(10);
+        }
+        fileCopier.pause();
+        fileCopier.cancel();
+        copyThread.join();
+        assertTrue("cancelled copy did not throw an exception",
+                exception[0] instanceof InterruptedIOException);
+
+        fileCopier.setMaxBandwidth(0);
+        fileCopier.copy(createCopyJob());
+        assertFalse("next copy is still paused", fileCopier.isPaused());
+        assertArrayEquals("destination does not match source",
+                data, read(destinationFile));
+    }
+
+    private byte[] createSource() throws IOException {
+        byte[] data = new byte[8 * 1024 * 1024];
+        new Random().nextBytes(data);
+        write(sourceFile, data);
+        return data;
+    }
+
+    private CopyJob createCopyJob() {
+        return new CopyJob(new Source[]{new Source(sourceFile.getPath())},
+                new String[]{destinationDir.getPath()});
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+}
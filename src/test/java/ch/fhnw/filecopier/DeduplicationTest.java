@@ -0,0 +1,127 @@
+/*
+ * DeduplicationTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the deduplication of identical source files
+ */
+public class DeduplicationTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+
+    /**
+     * sets up some things before a test runs
+     */
+    @Before
+    public void setUp() {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "deduplicationSourceDir");
+        destinationDir = new File(tmpDir, "deduplicationDestinationDir");
+        for (File dir : new File[]{sourceDir, destinationDir}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(destinationDir);
+    }
+
+    /**
+     * test, if identical files are linked and other files are copied
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testDeduplication() throws Exception {
+        write(new File(sourceDir, "original"), "content");
+        File subDir = new File(sourceDir, "subDir");
+        assertTrue(subDir.mkdir());
+        write(new File(subDir, "duplicate"), "content");
+        // same size, but different content
+        write(new File(sourceDir, "other"), "CONTENT");
+
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir.getPath()});
+        copyJob.setDeduplicate(true);
+        fileCopier.copy(copyJob);
+
+        File original = new File(destinationDir, "original");
+        File duplicate = new File(destinationDir, "subDir/duplicate");
+        File other = new File(destinationDir, "other");
+        assertEquals("content", read(duplicate));
+        assertEquals("CONTENT", read(other));
+        assertTrue("duplicate was not linked",
+                Files.isSameFile(original.toPath(), duplicate.toPath()));
+        assertFalse("different file was linked",
+                Files.isSameFile(original.toPath(), other.toPath()));
+        assertEquals("wrong number of saved bytes",
+                "content".length(), fileCopier.getLinkedBytes());
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileWriter fileWriter = new FileWriter(file);
+        fileWriter.write(content);
+        fileWriter.close();
+    }
+
+    private String read(File file) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
+        String line = bufferedReader.readLine();
+        bufferedReader.close();
+        return line;
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
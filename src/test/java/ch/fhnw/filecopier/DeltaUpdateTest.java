@@ -0,0 +1,127 @@
+/*
+ * DeltaUpdateTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for block-level delta updates of existing destination files
+ */
+public class DeltaUpdateTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private File sourceFile;
+    private File destinationFile;
+
+    /**
+     * sets up some things before a test runs
+     */
+    @Before
+    public void setUp() {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "deltaSourceDir");
+        if (!sourceDir.exists() && !sourceDir.mkdirs()) {
+            fail("could not create source dir " + sourceDir);
+        }
+        destinationDir = new File(tmpDir, "deltaDestinationDir");
+        if (!destinationDir.exists() && !destinationDir.mkdirs()) {
+            fail("could not create destination dir " + destinationDir);
+        }
+        sourceFile = new File(sourceDir, "sourceFile");
+        destinationFile = new File(destinationDir, "sourceFile");
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        for (File file : new File[]{
+                    sourceFile, sourceDir, destinationFile, destinationDir}) {
+            if (file.exists() && !file.delete()) {
+                fail("could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * test, if only changed blocks are written
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testDeltaUpdate() throws Exception {
+        int blockSize = 64 * 1024;
+        int testSize = 3 * 1024 * 1024;
+        byte[] data = new byte[testSize];
+        new Random().nextBytes(data);
+        write(sourceFile, data);
+
+        // the destination differs in a single block and is too long
+        byte[] destinationData = Arrays.copyOf(data, testSize + 1000);
+        destinationData[5 * blockSize + 17]++;
+        write(destinationFile, destinationData);
+
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceFile.getPath())},
+                new String[]{destinationDir.getPath()});
+        copyJob.setDeltaUpdate(true);
+        copyJob.setDeltaBlockSize(blockSize);
+        fileCopier.copy(copyJob);
+
+        assertArrayEquals("destination does not match source",
+                data, read(destinationFile));
+        assertEquals("wrong number of compared bytes",
+                testSize, fileCopier.getDeltaComparedBytes());
+        assertEquals("wrong number of written bytes",
+                blockSize, fileCopier.getDeltaWrittenBytes());
+        assertEquals("progress must count the compared bytes",
+                testSize, fileCopier.getCopiedBytes());
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * FlightRecorderTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the Java Flight Recorder events
+ */
+public class FlightRecorderTest {
+
+    private static final int SIZE = 3 * 1024 * 1024;
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir1;
+    private File destinationDir2;
+    private File recordingFile;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // the Flight Recorder is only available since Java 11
+        boolean flightRecorder = true;
+        try {
+            Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException ex) {
+            flightRecorder = false;
+        }
+        Assume.assumeTrue(flightRecorder);
+
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "jfrSourceDir");
+        destinationDir1 = new File(tmpDir, "jfrDestinationDir1");
+        destinationDir2 = new File(tmpDir, "jfrDestinationDir2");
+        for (File dir : new File[]{
+                    sourceDir, destinationDir1, destinationDir2}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+        byte[] data = new byte[SIZE];
+        new Random().nextBytes(data);
+        write(new File(sourceDir, "sourceFile"), data);
+        recordingFile = new File(tmpDir, "jfrRecording.jfr");
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        if (fileCopier != null) {
+            delete(sourceDir);
+            delete(destinationDir1);
+            delete(destinationDir2);
+            delete(recordingFile);
+        }
+    }
+
+    /**
+     * test, if copy operations emit their events
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testEvents() throws Exception {
+        Recording recording = new Recording();
+        for (String event : new String[]{"ScanDirectory", "FileCopy", "Slice",
+                    "BarrierWait"}) {
+            recording.enable("ch.fhnw.filecopier." + event).withoutThreshold();
+        }
+        recording.start();
+        fileCopier.copy(new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir1.getPath(),
+                    destinationDir2.getPath()}));
+        recording.stop();
+        recording.dump(recordingFile.toPath());
+        recording.close();
+
+        Map<String, Integer> eventCounts = new HashMap<String, Integer>();
+        RecordedEvent fileCopyEvent = null;
+        long sliceVolume = 0;
+        List<RecordedEvent> events =
+                RecordingFile.readAllEvents(recordingFile.toPath());
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            Integer count = eventCounts.get(name);
+            eventCounts.put(name, (count == null) ? 1 : count + 1);
+            if (name.equals("ch.fhnw.filecopier.FileCopy")) {
+                fileCopyEvent = event;
+            } else if (name.equals("ch.fhnw.filecopier.Slice")) {
+                sliceVolume += event.getLong("transferVolume");
+                assertTrue(event.getLong("newSlice") > 0);
+            }
+        }
+        assertEquals(Integer.valueOf(1),
+                eventCounts.get("ch.fhnw.filecopier.ScanDirectory"));
+        assertNotNull("no file copy event", fileCopyEvent);
+        assertEquals(SIZE, fileCopyEvent.getLong("size"));
+        assertEquals(2, fileCopyEvent.getInt("destinationCount"));
+        assertEquals("slices do not cover the file", SIZE, sliceVolume);
+        // every slice has a wait of every transferrer
+        assertEquals(2 * eventCounts.get("ch.fhnw.filecopier.Slice"),
+                (int) eventCounts.get("ch.fhnw.filecopier.BarrierWait"));
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
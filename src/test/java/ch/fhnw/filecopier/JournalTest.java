@@ -0,0 +1,196 @@
+/*
+ * JournalTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for resuming copy jobs with a journal
+ */
+public class JournalTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private File journalFile;
+
+    /**
+     * sets up some things before a test runs
+     */
+    @Before
+    public void setUp() {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "journalSourceDir");
+        if (!sourceDir.exists() && !sourceDir.mkdirs()) {
+            fail("could not create source dir " + sourceDir);
+        }
+        destinationDir = new File(tmpDir, "journalDestinationDir");
+        if (!destinationDir.exists() && !destinationDir.mkdirs()) {
+            fail("could not create destination dir " + destinationDir);
+        }
+        journalFile = new File(tmpDir, "journal");
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(destinationDir);
+        delete(journalFile);
+    }
+
+    /**
+     * test, if an interrupted copy job is resumed
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testResume() throws Exception {
+        int testSize = 3 * 1024 * 1024;
+        int resumePosition = 1024 * 1024;
+        byte[] data = new byte[testSize];
+        new Random().nextBytes(data);
+        File sourceFile = new File(sourceDir, "sourceFile");
+        write(sourceFile, data);
+        File completedFile = new File(sourceDir, "completedFile");
+        write(completedFile, data);
+
+        // simulate an interrupted copy: the destination already contains
+        // (different) data up to the resume position
+        byte[] marker = new byte[resumePosition];
+        Arrays.fill(marker, (byte) 42);
+        File destinationFile = new File(destinationDir, "sourceFile");
+        write(destinationFile, marker);
+        FileWriter fileWriter = new FileWriter(journalFile);
+        fileWriter.write("filecopier-journal 1\n"
+                + "T " + destinationDir.getAbsolutePath() + '\n'
+                + "D " + testSize + ' ' + completedFile.lastModified() + ' '
+                + completedFile.getAbsolutePath() + '\n'
+                + "P " + resumePosition + ' ' + testSize + ' '
+                + sourceFile.lastModified() + ' '
+                + sourceFile.getAbsolutePath() + '\n');
+        fileWriter.close();
+
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir.getPath()});
+        copyJob.setJournal(journalFile);
+        fileCopier.copy(copyJob);
+
+        byte[] expected = Arrays.copyOf(data, testSize);
+        System.arraycopy(marker, 0, expected, 0, resumePosition);
+        assertArrayEquals("copy was not resumed",
+                expected, read(destinationFile));
+        assertFalse("completed file was copied again",
+                new File(destinationDir, "completedFile").exists());
+        assertEquals("progress must include resumed and skipped files",
+                2 * testSize, fileCopier.getCopiedBytes());
+        assertFalse("journal was not removed", journalFile.exists());
+    }
+
+    /**
+     * test, if a file whose transfer failed is not recorded as completed and
+     * copied again when the copy job is resumed
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testResumeAfterFailure() throws Exception {
+        File fullDevice = new File("/dev/full");
+        Assume.assumeTrue(fullDevice.exists());
+        byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+        File sourceFile = new File(sourceDir, "sourceFile");
+        write(sourceFile, data);
+
+        // every write to the destination fails with "no space left"
+        File destinationFile = new File(destinationDir, "sourceFile");
+        Files.createSymbolicLink(destinationFile.toPath(), fullDevice.toPath());
+
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir.getPath()});
+        copyJob.setJournal(journalFile);
+        try {
+            fileCopier.copy(copyJob);
+            fail("failed transfer was not reported");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertTrue("journal was removed", journalFile.exists());
+        for (String line : Files.readAllLines(
+                journalFile.toPath(), Charset.forName("UTF-8"))) {
+            assertFalse("failed file was recorded as completed",
+                    line.startsWith("D ")
+                    && line.endsWith(sourceFile.getAbsolutePath()));
+        }
+
+        // resume with a working destination
+        assertTrue("could not remove link", destinationFile.delete());
+        fileCopier.copy(copyJob);
+        assertArrayEquals("failed file was not copied again",
+                data, read(destinationFile));
+        assertFalse("journal was not removed", journalFile.exists());
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * LatencyHistogramTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the latency histograms
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * test, if percentiles are found with the promised precision
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        // 1 µs .. 10 ms
+        for (long value = 1000; value <= 10000000; value += 1000) {
+            histogram.record(value);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(1000, histogram.getMin());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000500, histogram.getMean(), 0.1);
+        assertEquals(5000000,
+                histogram.getValueAtPercentile(50), 5000000 * 0.04);
+        assertEquals(9000000,
+                histogram.getValueAtPercentile(90), 9000000 * 0.04);
+        assertEquals(9900000,
+                histogram.getValueAtPercentile(99), 9900000 * 0.04);
+        assertEquals(10000000, histogram.getValueAtPercentile(100));
+        assertEquals(1000, histogram.getValueAtPercentile(0), 1000 * 0.04);
+    }
+
+    /**
+     * test, if small, negative and huge values are recorded
+     */
+    @Test
+    public void testExtremeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(7);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getMin());
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        // small values are exact
+        assertEquals(0, histogram.getValueAtPercentile(30));
+        assertEquals(7, histogram.getValueAtPercentile(60));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
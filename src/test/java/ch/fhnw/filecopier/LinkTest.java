@@ -0,0 +1,134 @@
+/*
+ * LinkTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for linking several destinations on the same file system
+ */
+public class LinkTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceFile;
+    private File destinationDir1;
+    private File destinationDir2;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        File sourceDir = new File(tmpDir, "linkSourceDir");
+        if (!sourceDir.exists() && !sourceDir.mkdirs()) {
+            fail("could not create source dir " + sourceDir);
+        }
+        sourceFile = new File(sourceDir, "sourceFile");
+        byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+        write(sourceFile, data);
+        destinationDir1 = new File(tmpDir, "linkDestinationDir1");
+        destinationDir2 = new File(tmpDir, "linkDestinationDir2");
+        for (File destinationDir : new File[]{
+                    destinationDir1, destinationDir2}) {
+            if (!destinationDir.exists() && !destinationDir.mkdirs()) {
+                fail("could not create destination dir " + destinationDir);
+            }
+        }
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceFile.getParentFile());
+        delete(destinationDir1);
+        delete(destinationDir2);
+    }
+
+    /**
+     * test, if the second destination is a hard link to the first one
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testHardLink() throws Exception {
+        fileCopier.copy(createCopyJob(CopyJob.LinkMode.HARD_LINK));
+        File destinationFile1 = new File(destinationDir1, "sourceFile");
+        File destinationFile2 = new File(destinationDir2, "sourceFile");
+        assertArrayEquals("destination does not match source",
+                read(sourceFile), read(destinationFile2));
+        assertTrue("destinations are not linked", Files.isSameFile(
+                destinationFile1.toPath(), destinationFile2.toPath()));
+    }
+
+    private CopyJob createCopyJob(CopyJob.LinkMode linkMode) {
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceFile.getPath())},
+                new String[]{
+                    destinationDir1.getPath(), destinationDir2.getPath()
+                });
+        copyJob.setLinkMode(linkMode);
+        copyJob.setVerification(CopyJob.Verification.FULL);
+        return copyJob;
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
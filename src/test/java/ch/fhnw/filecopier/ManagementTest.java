@@ -0,0 +1,175 @@
+/*
+ * ManagementTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the management of a copier via JMX
+ */
+public class ManagementTest {
+
+    private static final int SIZE = 4 * 1024 * 1024;
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private final MBeanServer mBeanServer =
+            ManagementFactory.getPlatformMBeanServer();
+    private FileCopier fileCopier;
+    private ObjectName name;
+    private File sourceDir;
+    private File destinationDir;
+    private File sourceFile;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create and register a copier instance
+        fileCopier = new FileCopier();
+        name = fileCopier.registerMBean();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "managementSourceDir");
+        destinationDir = new File(tmpDir, "managementDestinationDir");
+        for (File dir : new File[]{sourceDir, destinationDir}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+        byte[] data = new byte[SIZE];
+        new Random().nextBytes(data);
+        sourceFile = new File(sourceDir, "sourceFile");
+        write(sourceFile, data);
+    }
+
+    /**
+     * unregisters the copier and removes all test files and directories
+     * @throws Exception if an exception occurs
+     */
+    @After
+    public void tearDown() throws Exception {
+        fileCopier.unregisterMBean();
+        assertFalse("MBean was not unregistered",
+                mBeanServer.isRegistered(name));
+        delete(sourceDir);
+        delete(destinationDir);
+    }
+
+    /**
+     * test, if the MBean shows the counters of the copier
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testAttributes() throws Exception {
+        assertTrue("MBean was not registered", mBeanServer.isRegistered(name));
+        assertEquals("START", mBeanServer.getAttribute(name, "State"));
+        fileCopier.copy(createCopyJob());
+        assertEquals("END", mBeanServer.getAttribute(name, "State"));
+        assertEquals((long) SIZE, mBeanServer.getAttribute(name, "ByteCount"));
+        assertEquals((long) SIZE,
+                mBeanServer.getAttribute(name, "CopiedBytes"));
+        assertEquals(1L, mBeanServer.getAttribute(name, "CopiedFiles"));
+        assertEquals(0L, mBeanServer.getAttribute(name, "RemainingFiles"));
+        assertNull(mBeanServer.getAttribute(name, "CurrentFile"));
+        assertEquals(0L, mBeanServer.getAttribute(name, "FailedCopies"));
+        assertTrue((Long) mBeanServer.getAttribute(name, "SliceSize") > 0);
+    }
+
+    /**
+     * test, if the copy operation can be throttled and cancelled via JMX
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testThrottleAndCancel() throws Exception {
+        // copying with 2 MiB/s takes about two seconds
+        mBeanServer.setAttribute(name,
+                new Attribute("MaxBandwidth", 2L * 1024 * 1024));
+        final Exception[] exception = new Exception[1];
+        Thread copyThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    fileCopier.copy(createCopyJob());
+                } catch (Exception ex) {
+                    exception[0] = ex;
+                }
+            }
+        };
+        copyThread.start();
+
+        // wait until the first slice was copied
+        while (fileCopier.getCopiedBytes() == 0) {
+            Thread.sleep(10);
+        }
+        assertEquals("COPYING", mBeanServer.getAttribute(name, "State"));
+        assertNotNull(mBeanServer.getAttribute(name, "CurrentFile"));
+        assertEquals(1, ((String[]) mBeanServer.getAttribute(
+                name, "Destinations")).length);
+        assertTrue("throttled copy was too fast",
+                fileCopier.getCopiedBytes() < SIZE);
+
+        mBeanServer.invoke(
+                name, "cancelAndRemovePartialDestinations", null, null);
+        copyThread.join(5000);
+        assertFalse("copy was not cancelled", copyThread.isAlive());
+        assertTrue("cancelled copy did not throw an exception",
+                exception[0] instanceof InterruptedIOException);
+        assertTrue("copy was not cancelled early",
+                fileCopier.getCopiedBytes() < SIZE);
+        assertFalse("partial destination was not removed",
+                new File(destinationDir, sourceFile.getName()).exists());
+    }
+
+    private CopyJob createCopyJob() {
+        return new CopyJob(new Source[]{new Source(sourceFile.getPath())},
+                new String[]{destinationDir.getPath()});
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * OverwritePolicyTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the handling of existing destination files
+ */
+public class OverwritePolicyTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private File sourceFile;
+    private File destinationFile;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "overwriteSourceDir");
+        if (!sourceDir.exists() && !sourceDir.mkdirs()) {
+            fail("could not create source dir " + sourceDir);
+        }
+        destinationDir = new File(tmpDir, "overwriteDestinationDir");
+        if (!destinationDir.exists() && !destinationDir.mkdirs()) {
+            fail("could not create destination dir " + destinationDir);
+        }
+        sourceFile = new File(sourceDir, "sourceFile");
+        write(sourceFile, "source");
+        destinationFile = new File(destinationDir, "sourceFile");
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        for (File file : new File[]{
+                    sourceFile, sourceDir, destinationFile, destinationDir}) {
+            if (file.exists() && !file.delete()) {
+                fail("could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * test, if files with the same size and modification time are skipped
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testSkipSameSizeAndModificationTime() throws Exception {
+        CopyJob copyJob = createCopyJob(
+                CopyJob.OverwritePolicy.SKIP_SAME_SIZE_AND_MTIME);
+        fileCopier.copy(copyJob);
+        assertEquals("modification time was not copied",
+                sourceFile.lastModified(), destinationFile.lastModified());
+
+        // change the destination without changing size or modification time
+        long lastModified = destinationFile.lastModified();
+        write(destinationFile, "change");
+        assertTrue(destinationFile.setLastModified(lastModified));
+        fileCopier.copy(copyJob);
+        assertEquals("destination was not skipped", "change",
+                read(destinationFile));
+
+        // a different modification time must lead to a copy
+        assertTrue(destinationFile.setLastModified(lastModified - 10000));
+        fileCopier.copy(copyJob);
+        assertEquals("destination was not copied", "source",
+                read(destinationFile));
+        assertEquals("all bytes must be counted",
+                sourceFile.length(), fileCopier.getCopiedBytes());
+    }
+
+    /**
+     * test, if files with the same checksum are skipped
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testSkipSameChecksum() throws Exception {
+        CopyJob copyJob = createCopyJob(
+                CopyJob.OverwritePolicy.SKIP_SAME_CHECKSUM);
+        write(destinationFile, "change");
+        fileCopier.copy(copyJob);
+        assertEquals("destination was not copied", "source",
+                read(destinationFile));
+
+        long lastModified = destinationFile.lastModified() - 10000;
+        assertTrue(destinationFile.setLastModified(lastModified));
+        fileCopier.copy(copyJob);
+        assertEquals("destination was not skipped",
+                lastModified, destinationFile.lastModified());
+    }
+
+    /**
+     * test, if existing files are never overwritten
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testNeverOverwrite() throws Exception {
+        write(destinationFile, "existing destination");
+        fileCopier.copy(createCopyJob(CopyJob.OverwritePolicy.NEVER));
+        assertEquals("destination was overwritten", "existing destination",
+                read(destinationFile));
+    }
+
+    private CopyJob createCopyJob(CopyJob.OverwritePolicy overwritePolicy) {
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceFile.getPath())},
+                new String[]{destinationDir.getPath()});
+        copyJob.setOverwritePolicy(overwritePolicy);
+        return copyJob;
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileWriter fileWriter = new FileWriter(file);
+        fileWriter.write(content);
+        fileWriter.close();
+    }
+
+    private String read(File file) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
+        String line = bufferedReader.readLine();
+        bufferedReader.close();
+        return line;
+    }
+}
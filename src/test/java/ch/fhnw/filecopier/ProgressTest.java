@@ -0,0 +1,256 @@
+/*
+ * ProgressTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the progress counters and snapshots
+ */
+public class ProgressTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir1;
+    private File destinationDir2;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "progressSourceDir");
+        destinationDir1 = new File(tmpDir, "progressDestinationDir1");
+        destinationDir2 = new File(tmpDir, "progressDestinationDir2");
+        for (File dir : new File[]{
+                    sourceDir, destinationDir1, destinationDir2}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+
+        // some files that span several slices
+        Random random = new Random();
+        for (int i = 0; i < 3; i++) {
+            byte[] data = new byte[5 * 1024 * 1024 + i];
+            random.nextBytes(data);
+            write(new File(sourceDir, "file" + i), data);
+        }
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(destinationDir1);
+        delete(destinationDir2);
+    }
+
+    /**
+     * test, if progress snapshots are consistent while files are copied
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testSnapshots() throws Exception {
+        final List<CopyProgress> snapshots = new ArrayList<CopyProgress>();
+        // progress is sampled periodically, so the copy must take a while
+        fileCopier.setMaxBandwidth(30 * 1024 * 1024);
+        fileCopier.addPropertyChangeListener(FileCopier.BYTE_COUNTER_PROPERTY,
+                new PropertyChangeListener() {
+
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        snapshots.add(fileCopier.getProgress());
+                    }
+                });
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir1.getPath(),
+                    destinationDir2.getPath()});
+        fileCopier.copy(copyJob);
+
+        assertFalse("no progress was reported", snapshots.isEmpty());
+        long previousCopiedBytes = 0;
+        boolean currentFileSeen = false;
+        for (CopyProgress snapshot : snapshots) {
+            assertTrue("copied bytes must not decrease",
+                    snapshot.getCopiedBytes() >= previousCopiedBytes);
+            assertTrue("copied bytes must not exceed the byte count",
+                    snapshot.getCopiedBytes() <= snapshot.getByteCount());
+            previousCopiedBytes = snapshot.getCopiedBytes();
+            if (snapshot.getCurrentFile() != null) {
+                currentFileSeen = true;
+                assertEquals("wrong number of destinations",
+                        2, snapshot.getDestinationCount());
+                for (int i = 0; i < snapshot.getDestinationCount(); i++) {
+                    assertTrue("destination bytes exceed the file length",
+                            snapshot.getDestinationBytes(i)
+                            <= snapshot.getCurrentFileLength());
+                }
+            }
+        }
+        assertTrue("no current file was reported", currentFileSeen);
+
+        // after the copy operation the snapshot is complete
+        CopyProgress progress = fileCopier.getProgress();
+        assertEquals(FileCopier.State.END, progress.getState());
+        assertNull(progress.getCurrentFile());
+        assertEquals("all bytes must be counted",
+                progress.getByteCount(), progress.getCopiedBytes());
+        assertEquals(fileCopier.getByteCount(), fileCopier.getCopiedBytes());
+        assertEquals("all files must be counted",
+                fileCopier.getFileCount(), fileCopier.getCopiedFiles());
+        assertEquals(3, fileCopier.getFileCount());
+        assertEquals("nothing remains", 0, fileCopier.getRemainingTime());
+
+        // every stage was recorded: 3 files with 2 destinations each
+        assertEquals(1, fileCopier.getLatencyHistogram(
+                FileCopier.Stage.SCAN).getCount());
+        assertEquals(12, fileCopier.getLatencyHistogram(
+                FileCopier.Stage.OPEN).getCount());
+        assertEquals(6, fileCopier.getLatencyHistogram(
+                FileCopier.Stage.CLOSE).getCount());
+        assertTrue(fileCopier.getLatencyHistogram(
+                FileCopier.Stage.TRANSFER).getCount() >= 6);
+    }
+
+    /**
+     * test, if events are coalesced and delivered off the copying thread
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testAsynchronousEvents() throws Exception {
+        final List<PropertyChangeEvent> byteEvents =
+                new ArrayList<PropertyChangeEvent>();
+        final List<Object> states = new ArrayList<Object>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        assertEquals("events are not delivered asynchronously by default",
+                FileCopier.DEFAULT_MAX_EVENT_RATE,
+                fileCopier.getMaxEventRate());
+        fileCopier.addPropertyChangeListener(FileCopier.BYTE_COUNTER_PROPERTY,
+                new PropertyChangeListener() {
+
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        byteEvents.add(evt);
+                        threads.add(Thread.currentThread());
+                        try {
+                            // a slow listener
+                            Thread.sleep(100);
+                        } catch (InterruptedException ex) {
+                            fail("listener was interrupted");
+                        }
+                    }
+                });
+        fileCopier.addPropertyChangeListener(FileCopier.STATE_PROPERTY,
+                new PropertyChangeListener() {
+
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        states.add(evt.getNewValue());
+                        threads.add(Thread.currentThread());
+                    }
+                });
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir1.getPath(),
+                    destinationDir2.getPath()});
+        fileCopier.copy(copyJob);
+
+        // all events were delivered before copy() returned
+        assertEquals(FileCopier.State.END, states.get(states.size() - 1));
+        assertFalse("no progress was reported", byteEvents.isEmpty());
+        PropertyChangeEvent lastEvent = byteEvents.get(byteEvents.size() - 1);
+        assertEquals("last progress was not delivered",
+                fileCopier.getByteCount(), lastEvent.getNewValue());
+        assertFalse("events were delivered by the copying thread",
+                threads.contains(Thread.currentThread()));
+
+        // coalesced events continue where the previous event stopped
+        Object previousValue = 0L;
+        for (PropertyChangeEvent event : byteEvents) {
+            assertEquals(previousValue, event.getOldValue());
+            previousValue = event.getNewValue();
+        }
+    }
+
+    /**
+     * test, if events can be delivered directly by the firing thread
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testDirectEvents() throws Exception {
+        final List<Thread> threads = new ArrayList<Thread>();
+        fileCopier.setMaxEventRate(0);
+        fileCopier.addPropertyChangeListener(FileCopier.STATE_PROPERTY,
+                new PropertyChangeListener() {
+
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        threads.add(Thread.currentThread());
+                    }
+                });
+        fileCopier.copy(new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir1.getPath()}));
+        assertFalse("no state was reported", threads.isEmpty());
+        for (Thread thread : threads) {
+            assertSame("state was not delivered directly",
+                    Thread.currentThread(), thread);
+        }
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
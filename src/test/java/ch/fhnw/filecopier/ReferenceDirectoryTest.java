@@ -0,0 +1,135 @@
+/*
+ * ReferenceDirectoryTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for linking unchanged files from reference directories
+ */
+public class ReferenceDirectoryTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File referenceDir;
+    private File destinationDir;
+
+    /**
+     * sets up some things before a test runs
+     */
+    @Before
+    public void setUp() {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "referenceSourceDir");
+        referenceDir = new File(tmpDir, "referenceDir");
+        destinationDir = new File(tmpDir, "referenceDestinationDir");
+        for (File dir : new File[]{sourceDir, referenceDir, destinationDir}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(referenceDir);
+        delete(destinationDir);
+    }
+
+    /**
+     * test, if unchanged files are linked and changed files are copied
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testReferenceDirectory() throws Exception {
+        File unchangedFile = new File(sourceDir, "unchanged");
+        write(unchangedFile, "unchanged");
+        File changedFile = new File(sourceDir, "changed");
+        write(changedFile, "changed");
+
+        // yesterday's snapshot
+        File unchangedReference = new File(referenceDir, "unchanged");
+        write(unchangedReference, "unchanged");
+        assertTrue(unchangedReference.setLastModified(
+                unchangedFile.lastModified()));
+        File changedReference = new File(referenceDir, "changed");
+        write(changedReference, "CHANGED");
+        assertTrue(changedReference.setLastModified(
+                changedFile.lastModified() - 10000));
+
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir.getPath()});
+        copyJob.setReferenceDirectories(referenceDir.getPath());
+        fileCopier.copy(copyJob);
+
+        File unchangedDestination = new File(destinationDir, "unchanged");
+        assertTrue("unchanged file was not linked", Files.isSameFile(
+                unchangedReference.toPath(), unchangedDestination.toPath()));
+        File changedDestination = new File(destinationDir, "changed");
+        assertEquals("changed file was not copied", "changed",
+                read(changedDestination));
+        assertEquals("reference was modified", "CHANGED",
+                read(changedReference));
+    }
+
+    private void write(File file, String content) throws IOException {
+        FileWriter fileWriter = new FileWriter(file);
+        fileWriter.write(content);
+        fileWriter.close();
+    }
+
+    private String read(File file) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
+        String line = bufferedReader.readLine();
+        bufferedReader.close();
+        return line;
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * StatsFileTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the stats file
+ */
+public class StatsFileTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private File statsFile;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories and files
+        sourceDir = new File(tmpDir, "statsSourceDir");
+        destinationDir = new File(tmpDir, "statsDestinationDir");
+        for (File dir : new File[]{sourceDir, destinationDir}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+        for (int i = 0; i < 3; i++) {
+            write(new File(sourceDir, "file" + i), new byte[100000 * (i + 1)]);
+        }
+        statsFile = new File(tmpDir, "stats");
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(destinationDir);
+        delete(statsFile);
+    }
+
+    /**
+     * test, if the final counters are published into the stats file
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testStatsFile() throws Exception {
+        fileCopier.setStatsFile(statsFile);
+        fileCopier.setStatsInterval(10);
+        fileCopier.copy(new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{destinationDir.getPath()}));
+        StatsFileReader reader = new StatsFileReader(statsFile);
+        try {
+            assertTrue("no consistent snapshot", reader.read());
+            assertEquals(FileCopier.State.END, reader.getState());
+            assertEquals(600000, reader.getByteCount());
+            assertEquals(600000, reader.getCopiedBytes());
+            assertEquals(fileCopier.getFileCount(), reader.getFileCount());
+            assertEquals(fileCopier.getCopiedFiles(),
+                    reader.getCopiedFiles());
+            assertEquals("no file is copied", 0, reader.getCurrentFile());
+            assertTrue("update time not set", reader.getUpdateTime() > 0);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * test, if other files are rejected by the reader
+     * @throws Exception if an exception occurs
+     */
+    @Test(expected = IOException.class)
+    public void testNoStatsFile() throws Exception {
+        write(statsFile, new byte[256]);
+        new StatsFileReader(statsFile).close();
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * TarTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for copy jobs that create tar archives
+ */
+public class TarTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private Map<String, byte[]> sourceData;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "tarSourceDir");
+        destinationDir = new File(tmpDir, "tarDestinationDir");
+        for (File dir : new File[]{sourceDir, destinationDir}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+
+        // a large file with compressible and random parts that spans several
+        // compression chunks, a small file, an empty file and a file with a
+        // name that does not fit into a ustar header
+        Random random = new Random();
+        byte[] large = new byte[3 * 1024 * 1024 + 1234];
+        for (int i = 0; i < large.length; i += 4096) {
+            if (random.nextBoolean()) {
+                byte[] block = new byte[Math.min(4096, large.length - i)];
+                random.nextBytes(block);
+                System.arraycopy(block, 0, large, i, block.length);
+            }
+        }
+        char[] longName = new char[150];
+        Arrays.fill(longName, 'n');
+        sourceData = new HashMap<String, byte[]>();
+        sourceData.put("large", large);
+        sourceData.put("small", "small file".getBytes("UTF-8"));
+        sourceData.put("empty", new byte[0]);
+        sourceData.put(new String(longName), "long name".getBytes("UTF-8"));
+        for (Map.Entry<String, byte[]> entry : sourceData.entrySet()) {
+            write(new File(sourceDir, entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(destinationDir);
+    }
+
+    /**
+     * test, if a valid tar archive is created
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testTar() throws Exception {
+        File archive = new File(destinationDir, "archive.tar");
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{archive.getPath()}, true);
+        copyJob.setArchiveFormat(CopyJob.ArchiveFormat.TAR);
+        assertTrue(copyJob.isArchive());
+        assertFalse("tar archives are no zip archives", copyJob.isZip());
+        fileCopier.copy(copyJob);
+        assertEquals("tar archives consist of 512 byte blocks", 0,
+                archive.length() % 512);
+        assertArchive(new FileInputStream(archive));
+        assertEquals("all bytes must be counted", fileCopier.getByteCount(),
+                fileCopier.getCopiedBytes());
+    }
+
+    /**
+     * test, if every destination gets a valid compressed tar archive
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testTarGz() throws Exception {
+        File archive1 = new File(destinationDir, "archive1.tar.gz");
+        File archive2 = new File(destinationDir, "archive2.tar.gz");
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{archive1.getPath(), archive2.getPath()}, true);
+        copyJob.setArchiveFormat(CopyJob.ArchiveFormat.TAR_GZ);
+        fileCopier.copy(copyJob);
+        // the input stream checks the CRC and size in the gzip trailer
+        assertArchive(new GZIPInputStream(new FileInputStream(archive1)));
+        assertArchive(new GZIPInputStream(new FileInputStream(archive2)));
+        assertTrue("archive was not compressed",
+                archive1.length() < sourceData.get("large").length);
+    }
+
+    private void assertArchive(InputStream inputStream) throws IOException {
+        DataInputStream tarInputStream = new DataInputStream(inputStream);
+        try {
+            Map<String, byte[]> entries = new HashMap<String, byte[]>();
+            byte[] header = new byte[512];
+            String paxPath = null;
+            while (true) {
+                tarInputStream.readFully(header);
+                if (isEmpty(header)) {
+                    break;
+                }
+                assertEquals("wrong magic", "ustar",
+                        getString(header, 257, 5));
+                assertEquals("wrong checksum", getChecksum(header),
+                        Long.parseLong(getString(header, 148, 8).trim(), 8));
+                String name = getString(header, 0, 100);
+                int size = Integer.parseInt(getString(header, 124, 12), 8);
+                byte[] data = new byte[size];
+                tarInputStream.readFully(data);
+                tarInputStream.readFully(new byte[(512 - size % 512) % 512]);
+                if (header[156] == 'x') {
+                    // pax extended header: "<length> path=<name>\n"
+                    String record = new String(data, "UTF-8");
+                    paxPath = record.substring(record.indexOf("path=") + 5,
+                            record.length() - 1);
+                    continue;
+                }
+                assertEquals("wrong type", '0', header[156]);
+                entries.put((paxPath == null) ? name : paxPath, data);
+                paxPath = null;
+            }
+            assertEquals("wrong number of entries",
+                    sourceData.size(), entries.size());
+            for (Map.Entry<String, byte[]> entry : sourceData.entrySet()) {
+                assertArrayEquals("wrong content of " + entry.getKey(),
+                        entry.getValue(), entries.get(entry.getKey()));
+            }
+            assertEquals("data after end of archive", -1,
+                    skipBlocks(tarInputStream));
+        } finally {
+            tarInputStream.close();
+        }
+    }
+
+    private int skipBlocks(InputStream inputStream) throws IOException {
+        // the archive ends with two empty blocks
+        byte[] block = new byte[512];
+        new DataInputStream(inputStream).readFully(block);
+        assertTrue("second end block is not empty", isEmpty(block));
+        return inputStream.read();
+    }
+
+    private static boolean isEmpty(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long getChecksum(byte[] header) {
+        long checksum = 0;
+        for (int i = 0; i < header.length; i++) {
+            checksum += ((i >= 148) && (i < 156)) ? ' ' : (header[i] & 0xFF);
+        }
+        return checksum;
+    }
+
+    private static String getString(byte[] header, int offset, int length)
+            throws IOException {
+        int end = offset;
+        while ((end < offset + length) && (header[end] != 0)) {
+            end++;
+        }
+        return new String(header, offset, end - offset, "UTF-8");
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * ThroughputEstimatorTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for the throughput estimator
+ */
+public class ThroughputEstimatorTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * test, if a constant bandwidth is estimated correctly
+     */
+    @Test
+    public void testConstantBandwidth() {
+        ThroughputEstimator estimator = new ThroughputEstimator();
+        assertEquals("no estimate without samples",
+                -1, estimator.getRemainingTime(1000, 1));
+        estimator.reset(0);
+        // 100 MB/s in one large file
+        for (int i = 1; i <= 20; i++) {
+            estimator.update(i * SECOND, i * 100000000L, 0);
+        }
+        assertEquals(1e8, estimator.getBandwidth(), 1e3);
+        assertEquals(1e8, estimator.getWindowBandwidth(), 1e3);
+        assertEquals(10000, estimator.getRemainingTime(1000000000L, 0), 10);
+    }
+
+    /**
+     * test, if the overhead per file and the cost per byte are told apart
+     */
+    @Test
+    public void testFileOverhead() {
+        ThroughputEstimator estimator = new ThroughputEstimator();
+        estimator.reset(0);
+        // every file costs 1 ms, every byte costs 10 ns
+        long time = 0;
+        long bytes = 0;
+        long files = 0;
+        for (int i = 0; i < 20; i++) {
+            // 200 small files of 1 KiB
+            files += 200;
+            bytes += 200 * 1024;
+            time += 200 * MILLISECOND + 200 * 1024 * 10;
+            estimator.update(time, bytes, files);
+            // one large file of 50 MB
+            files++;
+            bytes += 50000000;
+            time += MILLISECOND + 50000000L * 10;
+            estimator.update(time, bytes, files);
+        }
+        assertEquals(MILLISECOND, estimator.getFileOverhead(), 1e3);
+        assertEquals(10, estimator.getByteCost(), 0.01);
+
+        // many small files remain, the bandwidth alone would be way off
+        long remaining = estimator.getRemainingTime(1000 * 1024, 1000);
+        assertEquals(1010, remaining, 5);
+    }
+
+    /**
+     * test, if the estimate follows a change of speed
+     */
+    @Test
+    public void testSpeedChange() {
+        ThroughputEstimator estimator = new ThroughputEstimator();
+        estimator.reset(0);
+        long bytes = 0;
+        // a long slow phase with 10 MB/s
+        for (int i = 1; i <= 60; i++) {
+            bytes += 10000000;
+            estimator.update(i * SECOND, bytes, 0);
+        }
+        // a shorter fast phase with 100 MB/s
+        for (int i = 61; i <= 90; i++) {
+            bytes += 100000000;
+            estimator.update(i * SECOND, bytes, 0);
+        }
+        // the lifetime average would be 40 MB/s
+        assertEquals(1e8, estimator.getBandwidth(), 1e6);
+        assertEquals(1e8, estimator.getWindowBandwidth(), 1e3);
+        assertEquals(10000, estimator.getRemainingTime(1000000000L, 0), 500);
+    }
+}
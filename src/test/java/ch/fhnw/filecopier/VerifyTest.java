@@ -0,0 +1,260 @@
+/*
+ * VerifyTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for verifying destinations after copying
+ */
+public class VerifyTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir1;
+    private File destinationDir2;
+
+    /**
+     * sets up some things before a test runs
+     */
+    @Before
+    public void setUp() {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "verifySourceDir");
+        if (!sourceDir.exists() && !sourceDir.mkdirs()) {
+            fail("could not create source dir " + sourceDir);
+        }
+        destinationDir1 = new File(tmpDir, "verifyDestinationDir1");
+        if (!destinationDir1.exists() && !destinationDir1.mkdirs()) {
+            fail("could not create destination dir " + destinationDir1);
+        }
+        destinationDir2 = new File(tmpDir, "verifyDestinationDir2");
+        if (!destinationDir2.exists() && !destinationDir2.mkdirs()) {
+            fail("could not create destination dir " + destinationDir2);
+        }
+    }
+
+    /**
+     * removes all test directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(destinationDir1);
+        delete(destinationDir2);
+    }
+
+    /**
+     * test, if correctly copied files pass the verification
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testVerification() throws Exception {
+        int testSize = 3 * 1024 * 1024;
+        File sourceFile = createSourceFile(testSize);
+
+        final List<FileCopier.State> states = new ArrayList<FileCopier.State>();
+        fileCopier.addPropertyChangeListener(FileCopier.STATE_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        states.add((FileCopier.State) evt.getNewValue());
+                    }
+                });
+
+        fileCopier.copy(createCopyJob(sourceFile));
+
+        assertTrue("verification state was skipped",
+                states.contains(FileCopier.State.VERIFYING));
+        assertEquals("wrong verify byte count",
+                2 * testSize, fileCopier.getVerifyByteCount());
+        assertEquals("not all bytes were verified",
+                2 * testSize, fileCopier.getVerifiedBytes());
+    }
+
+    /**
+     * test, if a corrupted destination is detected
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testCorruptedDestination() throws Exception {
+        File sourceFile = createSourceFile(3 * 1024 * 1024);
+        final File corrupted = new File(destinationDir2, sourceFile.getName());
+
+        // corrupt the second destination before it is read back (the
+        // listener must run before the copier continues)
+        fileCopier.setMaxEventRate(0);
+        fileCopier.addPropertyChangeListener(FileCopier.STATE_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        if (evt.getNewValue() == FileCopier.State.VERIFYING) {
+                            try {
+                                RandomAccessFile randomAccessFile =
+                                        new RandomAccessFile(corrupted, "rw");
+                                randomAccessFile.seek(1024 * 1024);
+                                randomAccessFile.write(
+                                        ~randomAccessFile.read());
+                                randomAccessFile.close();
+                            } catch (IOException ex) {
+                                fail("could not corrupt " + corrupted);
+                            }
+                        }
+                    }
+                });
+
+        try {
+            fileCopier.copy(createCopyJob(sourceFile));
+            fail("corrupted destination was not detected");
+        } catch (IOException ex) {
+            assertTrue("wrong destination reported",
+                    ex.getMessage().contains(corrupted.getPath()));
+        }
+    }
+
+    /**
+     * test, if large files are sampled and small files are compared completely
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testSampledVerification() throws Exception {
+        File sourceFile = createSourceFile(3 * 1024 * 1024);
+
+        CopyJob copyJob = createCopyJob(sourceFile);
+        copyJob.setVerification(CopyJob.Verification.SAMPLED);
+        copyJob.setSampleCount(16);
+        copyJob.setSampleSize(4096);
+        fileCopier.copy(copyJob);
+
+        VerificationReport report = fileCopier.getVerificationReport();
+        assertEquals("large file was not sampled", 2, report.getSampledFiles());
+        assertEquals("wrong number of compared bytes",
+                2 * 16 * 4096, report.getComparedBytes());
+        assertEquals("no mismatch expected", 0, report.getMismatches());
+        assertTrue("wrong detection probability",
+                report.getDetectionProbability(0.5) > 0.9999);
+
+        // a file with less blocks than samples must be compared completely
+        copyJob.setSampleCount(1024);
+        fileCopier.copy(copyJob);
+        report = fileCopier.getVerificationReport();
+        assertEquals("small file was sampled", 2, report.getCompleteFiles());
+        assertEquals("small file was sampled", 0, report.getSampledFiles());
+    }
+
+    /**
+     * test, if only the samples compared up to the first mismatch are
+     * reported
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testSampledMismatch() throws Exception {
+        final int testSize = 3 * 1024 * 1024;
+        File sourceFile = createSourceFile(testSize);
+        final File corrupted = new File(destinationDir2, sourceFile.getName());
+
+        // every block of the second destination differs from the source
+        fileCopier.setMaxEventRate(0);
+        fileCopier.addPropertyChangeListener(FileCopier.STATE_PROPERTY,
+                new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        if (evt.getNewValue() == FileCopier.State.VERIFYING) {
+                            try {
+                                RandomAccessFile randomAccessFile =
+                                        new RandomAccessFile(corrupted, "rw");
+                                randomAccessFile.write(new byte[testSize]);
+                                randomAccessFile.close();
+                            } catch (IOException ex) {
+                                fail("could not corrupt " + corrupted);
+                            }
+                        }
+                    }
+                });
+
+        CopyJob copyJob = createCopyJob(sourceFile);
+        copyJob.setVerification(CopyJob.Verification.SAMPLED);
+        copyJob.setSampleCount(16);
+        copyJob.setSampleSize(4096);
+        try {
+            fileCopier.copy(copyJob);
+            fail("corrupted destination was not detected");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        VerificationReport report = fileCopier.getVerificationReport();
+        assertEquals(1, report.getMismatches());
+        assertEquals("wrong number of compared bytes",
+                17 * 4096, report.getComparedBytes());
+        assertEquals("only one block of the corrupted file was compared",
+                0.5, report.getDetectionProbability(0.5), 0.0001);
+    }
+
+    private CopyJob createCopyJob(File sourceFile) {
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceFile.getPath())},
+                new String[]{
+                    destinationDir1.getPath(),
+                    destinationDir2.getPath()
+                });
+        copyJob.setVerification(CopyJob.Verification.FULL);
+        return copyJob;
+    }
+
+    private File createSourceFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        File sourceFile = new File(sourceDir, "sourceFile");
+        FileOutputStream fileOutputStream = new FileOutputStream(sourceFile);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+        return sourceFile;
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * ZipSourceTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.fhnw.filecopier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for extracting zip archives
+ */
+public class ZipSourceTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File archive;
+    private File destinationDir1;
+    private File destinationDir2;
+    private Map<String, byte[]> entryData;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        destinationDir1 = new File(tmpDir, "zipSourceDestinationDir1");
+        destinationDir2 = new File(tmpDir, "zipSourceDestinationDir2");
+        for (File dir : new File[]{destinationDir1, destinationDir2}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+
+        // an archive with a large compressed entry, a stored entry, an empty
+        // entry and entries in subdirectories
+        Random random = new Random();
+        byte[] large = new byte[3 * 1024 * 1024 + 1234];
+        for (int i = 0; i < large.length; i += 8192) {
+            if (random.nextBoolean()) {
+                byte[] block = new byte[Math.min(4096, large.length - i)];
+                random.nextBytes(block);
+                System.arraycopy(block, 0, large, i, block.length);
+            }
+        }
+        entryData = new LinkedHashMap<String, byte[]>();
+        entryData.put("large", large);
+        entryData.put("stored", "stored entry".getBytes("UTF-8"));
+        entryData.put("empty", new byte[0]);
+        entryData.put("dir/sub/file", "file in subdirectory".getBytes("UTF-8"));
+        archive = new File(tmpDir, "zipSource.zip");
+        ZipOutputStream zipOutputStream =
+                new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            zipOutputStream.putNextEntry(new ZipEntry("dir/"));
+            zipOutputStream.closeEntry();
+            for (Map.Entry<String, byte[]> entry : entryData.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (entry.getKey().equals("stored")) {
+                    CRC32 crc32 = new CRC32();
+                    crc32.update(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCrc(crc32.getValue());
+                }
+                zipOutputStream.putNextEntry(zipEntry);
+                zipOutputStream.write(entry.getValue());
+                zipOutputStream.closeEntry();
+            }
+        } finally {
+            zipOutputStream.close();
+        }
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(archive);
+        delete(destinationDir1);
+        delete(destinationDir2);
+    }
+
+    /**
+     * test, if all entries are extracted into every destination
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testExtract() throws Exception {
+        fileCopier.copy(new CopyJob(
+                new Source[]{new ZipSource(archive.getPath())},
+                new String[]{destinationDir1.getPath(),
+                    destinationDir2.getPath()}));
+        long size = 0;
+        for (Map.Entry<String, byte[]> entry : entryData.entrySet()) {
+            for (File destinationDir
+                    : new File[]{destinationDir1, destinationDir2}) {
+                assertArrayEquals("wrong content of " + entry.getKey(),
+                        entry.getValue(), read(new File(destinationDir,
+                                        entry.getKey())));
+            }
+            size += entry.getValue().length;
+        }
+        assertEquals("wrong byte count", size, fileCopier.getByteCount());
+        assertEquals("all bytes must be counted", fileCopier.getByteCount(),
+                fileCopier.getCopiedBytes());
+    }
+
+    /**
+     * test, if only the entries matching the pattern are extracted
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testPattern() throws Exception {
+        fileCopier.copy(new CopyJob(
+                new Source[]{new ZipSource(archive.getPath(), "dir/.*")},
+                new String[]{destinationDir1.getPath()}));
+        assertTrue("matching entry was not extracted",
+                new File(destinationDir1, "dir/sub/file").isFile());
+        assertFalse("entry was extracted that does not match",
+                new File(destinationDir1, "large").exists());
+    }
+
+    /**
+     * test, if entries that would escape from the destination are rejected
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testInvalidName() throws Exception {
+        ZipOutputStream zipOutputStream =
+                new ZipOutputStream(new FileOutputStream(archive));
+        zipOutputStream.putNextEntry(new ZipEntry("../escaped"));
+        zipOutputStream.write(1);
+        zipOutputStream.close();
+        try {
+            fileCopier.copy(new CopyJob(
+                    new Source[]{new ZipSource(archive.getPath())},
+                    new String[]{destinationDir1.getPath()}));
+            fail("invalid entry name was not rejected");
+        } catch (ZipException ex) {
+            // expected
+        }
+        assertFalse("entry escaped from the destination",
+                new File(tmpDir, "escaped").exists());
+    }
+
+    private byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}
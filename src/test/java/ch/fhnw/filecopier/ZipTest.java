@@ -0,0 +1,378 @@
+/*
+ * ZipTest.java
+ *
+ * This file is part of the Java File Copy Library.
+ *
+ * The Java File Copy Libraryis free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * The Java File Copy Libraryis distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ch.fhnw.filecopier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Some tests for copy jobs that create zip archives
+ */
+public class ZipTest {
+
+    private final File tmpDir = new File(System.getProperty("java.io.tmpdir") +
+            File.separatorChar + "filecopiertest");
+    private FileCopier fileCopier;
+    private File sourceDir;
+    private File destinationDir;
+    private Map<String, byte[]> sourceData;
+
+    /**
+     * sets up some things before a test runs
+     * @throws Exception if an exception occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        // create a copier instance
+        fileCopier = new FileCopier();
+
+        // create all test directories
+        sourceDir = new File(tmpDir, "zipSourceDir");
+        destinationDir = new File(tmpDir, "zipDestinationDir");
+        for (File dir : new File[]{sourceDir, destinationDir}) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                fail("could not create dir " + dir);
+            }
+        }
+
+        // a large file with compressible and random parts that is split into
+        // several chunks, a small file and an empty file
+        Random random = new Random();
+        byte[] large = new byte[5 * 1024 * 1024 + 1234];
+        for (int i = 0; i < large.length; i += 4096) {
+            if (random.nextBoolean()) {
+                byte[] block = new byte[Math.min(4096, large.length - i)];
+                random.nextBytes(block);
+                System.arraycopy(block, 0, large, i, block.length);
+            }
+        }
+        sourceData = new HashMap<String, byte[]>();
+        sourceData.put("large", large);
+        sourceData.put("small", "small file".getBytes("UTF-8"));
+        sourceData.put("empty", new byte[0]);
+        for (Map.Entry<String, byte[]> entry : sourceData.entrySet()) {
+            write(new File(sourceDir, entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * removes all test files and directories
+     */
+    @After
+    public void tearDown() {
+        delete(sourceDir);
+        delete(destinationDir);
+    }
+
+    /**
+     * test, if a valid archive is created
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testZip() throws Exception {
+        File archive = new File(destinationDir, "archive.zip");
+        fileCopier.copy(new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{archive.getPath()}, true));
+        assertArchive(archive);
+        assertEquals("all bytes must be counted", fileCopier.getByteCount(),
+                fileCopier.getCopiedBytes());
+    }
+
+    /**
+     * test, if entries are named by their relative path and directories are
+     * added as entries before their content
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testRelativePaths() throws Exception {
+        File subDir = new File(sourceDir, "sub");
+        assertTrue(subDir.mkdir());
+        sourceData.put("sub/", new byte[0]);
+        sourceData.put("sub/small", "other small file".getBytes("UTF-8"));
+        write(new File(subDir, "small"), sourceData.get("sub/small"));
+
+        File archive = new File(destinationDir, "archive.zip");
+        fileCopier.copy(new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{archive.getPath()}, true));
+        assertArchive(archive);
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            assertTrue("directory entry is missing",
+                    zipFile.getEntry("sub/").isDirectory());
+            List<String> names = new ArrayList<String>();
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    entries.hasMoreElements();) {
+                names.add(entries.nextElement().getName());
+            }
+            assertTrue("directory entry must precede its content",
+                    names.indexOf("sub/") < names.indexOf("sub/small"));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * test, if every destination gets a valid archive
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testMultipleDestinations() throws Exception {
+        File archive1 = new File(destinationDir, "archive1.zip");
+        File archive2 = new File(destinationDir, "archive2.zip");
+        fileCopier.copy(new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{archive1.getPath(), archive2.getPath()}, true));
+        assertArchive(archive1);
+        assertArchive(archive2);
+    }
+
+    /**
+     * test, if incompressible files are stored
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testCompressionMethods() throws Exception {
+        byte[] text = new byte[100000];
+        Arrays.fill(text, (byte) 'a');
+        byte[] random = new byte[100000];
+        new Random().nextBytes(random);
+        sourceData.put("photo.JPG", text);
+        sourceData.put("text", text);
+        sourceData.put("random", random);
+        for (String name : new String[]{"photo.JPG", "text", "random"}) {
+            write(new File(sourceDir, name), sourceData.get(name));
+        }
+
+        File archive = new File(destinationDir, "archive.zip");
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{archive.getPath()}, true);
+        fileCopier.copy(copyJob);
+        assertArchive(archive);
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            assertEquals("stored extension was compressed", ZipEntry.STORED,
+                    zipFile.getEntry("photo.JPG").getMethod());
+            assertEquals("random data was compressed", ZipEntry.STORED,
+                    zipFile.getEntry("random").getMethod());
+            assertEquals("text was not compressed", ZipEntry.DEFLATED,
+                    zipFile.getEntry("text").getMethod());
+        } finally {
+            zipFile.close();
+        }
+
+        // level 0 stores everything
+        copyJob.setCompressionLevel(0);
+        fileCopier.copy(copyJob);
+        assertArchive(archive);
+        zipFile = new ZipFile(archive);
+        try {
+            assertEquals("text was compressed with level 0", ZipEntry.STORED,
+                    zipFile.getEntry("text").getMethod());
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * test, if archives with more entries than the original zip format
+     * supports are written with ZIP64 extensions
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testZip64() throws Exception {
+        int count = 70000;
+        File archive = new File(destinationDir, "zip64.zip");
+        ZipArchiveWriter zipWriter = new ZipArchiveWriter(
+                new FileOutputStream(archive).getChannel());
+        for (int i = 0; i < count; i++) {
+            zipWriter.putEntry(new ZipArchiveEntry("entry" + i,
+                    System.currentTimeMillis(), ZipArchiveEntry.STORED, 0,
+                    0, 0));
+            zipWriter.closeEntry();
+        }
+        zipWriter.close();
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            assertEquals("wrong number of entries", count, zipFile.size());
+            assertNotNull("missing last entry",
+                    zipFile.getEntry("entry" + (count - 1)));
+        } finally {
+            zipFile.close();
+        }
+        ZipArchiveReader zipReader = new ZipArchiveReader(archive);
+        try {
+            assertEquals("wrong number of entries read", count,
+                    zipReader.getEntries().size());
+        } finally {
+            zipReader.close();
+        }
+    }
+
+    /**
+     * test, if an existing archive is updated without compressing unchanged
+     * files again
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testUpdate() throws Exception {
+        File archive = new File(destinationDir, "archive.zip");
+        CopyJob copyJob = new CopyJob(
+                new Source[]{new Source(sourceDir.getPath(), ".*")},
+                new String[]{archive.getPath()}, true);
+        copyJob.setZipUpdate(true);
+        copyJob.setCompressionLevel(1);
+        fileCopier.copy(copyJob);
+        assertArchive(archive);
+        long compressedSize = getCompressedSize(archive, "large");
+
+        // modify, add and remove some files
+        File small = new File(sourceDir, "small");
+        long lastModified = small.lastModified();
+        sourceData.put("small", "modified small file".getBytes("UTF-8"));
+        write(small, sourceData.get("small"));
+        small.setLastModified(lastModified + 10000);
+        sourceData.put("new", "new file".getBytes("UTF-8"));
+        write(new File(sourceDir, "new"), sourceData.get("new"));
+        sourceData.remove("empty");
+        assertTrue(new File(sourceDir, "empty").delete());
+
+        // a different compression level reveals recompressed entries
+        copyJob.setCompressionLevel(9);
+        fileCopier.copy(copyJob);
+        assertArchive(archive);
+        assertEquals("all bytes must be counted", fileCopier.getByteCount(),
+                fileCopier.getCopiedBytes());
+        assertEquals("unchanged file was compressed again", compressedSize,
+                getCompressedSize(archive, "large"));
+        assertFalse("temporary archive was not removed",
+                DestinationCommitter.getTemporaryFile(archive).exists());
+
+        // without update mode everything is compressed again
+        copyJob.setZipUpdate(false);
+        fileCopier.copy(copyJob);
+        assertArchive(archive);
+        assertTrue("file was not compressed again",
+                compressedSize != getCompressedSize(archive, "large"));
+    }
+
+    private long getCompressedSize(File archive, String name)
+            throws IOException {
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            return zipFile.getEntry(name).getCompressedSize();
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private void assertArchive(File archive) throws IOException {
+        // the stream checks the local headers and CRCs
+        ZipInputStream zipInputStream =
+                new ZipInputStream(new FileInputStream(archive));
+        try {
+            int count = 0;
+            for (ZipEntry entry = zipInputStream.getNextEntry();
+                    entry != null; entry = zipInputStream.getNextEntry()) {
+                assertArrayEquals("wrong content of " + entry.getName(),
+                        sourceData.get(entry.getName()),
+                        readFully(zipInputStream));
+                count++;
+            }
+            assertEquals("wrong number of entries", sourceData.size(), count);
+        } finally {
+            zipInputStream.close();
+        }
+
+        // the file checks the central directory
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            assertEquals("wrong number of central directory entries",
+                    sourceData.size(), zipFile.size());
+            for (Map.Entry<String, byte[]> entry : sourceData.entrySet()) {
+                ZipEntry zipEntry = zipFile.getEntry(entry.getKey());
+                assertNotNull("missing entry " + entry.getKey(), zipEntry);
+                assertTrue("wrong content of " + entry.getKey(),
+                        Arrays.equals(entry.getValue(),
+                                readFully(zipFile.getInputStream(zipEntry))));
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream =
+                new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            byteArrayOutputStream.write(buffer, 0, read);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+    }
+
+    private byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) randomAccessFile.length()];
+        randomAccessFile.readFully(data);
+        randomAccessFile.close();
+        return data;
+    }
+
+    private void delete(File file) {
+        File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles) {
+                delete(subFile);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            fail("could not delete " + file);
+        }
+    }
+}